@@ -0,0 +1,177 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sustained-ingest benchmark for the append path ("bench-append [rows] [batch]").
+ * <p>
+ * Appends the same generated rows, batch by batch, through the earlier heap-based
+ * paths (text line per row, then bytes) and through the direct-buffer gathering write
+ * {@link TransactionAppender} uses now (rows encoded straight into the buffers), and
+ * prints the throughput of each. Files are not synced, so the numbers
+ * show the cost of copying and system calls rather than of the disk.
+ */
+final class AppendBenchmark {
+
+    private static final int ROUNDS = 3;
+
+    private AppendBenchmark() {
+    }
+
+    /**
+     * One way of appending a batch of rows to an open file.
+     */
+    private interface AppendPath {
+        void append(List<Transaction> batch) throws IOException;
+    }
+
+    /* ------------------------------------------------------------------
+       Running
+       ------------------------------------------------------------------ */
+
+    /**
+     * Runs every path {@link #ROUNDS} times (after one warm-up) and prints the best round.
+     */
+    static void run(int rowCount, int batchSize) throws IOException {
+        List<List<Transaction>> batches = generateBatches(rowCount, batchSize);
+        long bytes = 0;
+        for (List<Transaction> batch : batches) {
+            for (Transaction row : batch) bytes += RecordEncoder.line(row).length() + System.lineSeparator().length();
+        }
+        System.out.printf("Appending %,d rows in batches of %d (%,.1f MB of text)%n",
+                rowCount, batchSize, bytes / (1024.0 * 1024.0));
+
+        Path directory = Files.createTempDirectory("bench-append");
+        try {
+            measure("BufferedWriter (FileWriter)", directory, batches, bytes, file -> {
+                BufferedWriter writer = new BufferedWriter(new FileWriter(file.toFile(), true));
+                return new OpenPath(batch -> {
+                    for (Transaction row : batch) {
+                        writer.write(RecordEncoder.line(row));
+                        writer.newLine();
+                    }
+                    writer.flush();
+                }, writer::close);
+            });
+            measure("heap byte[] + write", directory, batches, bytes, file -> {
+                FileChannel channel = open(file);
+                return new OpenPath(batch -> {
+                    StringBuilder text = new StringBuilder(batch.size() * 56);
+                    for (Transaction row : batch) RecordEncoder.append(row, text).append(System.lineSeparator());
+                    ByteArrayOutputStream joined = new ByteArrayOutputStream();
+                    joined.writeBytes(text.toString().getBytes(StandardCharsets.UTF_8));
+                    ByteBuffer buffer = ByteBuffer.wrap(joined.toByteArray());
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }, channel::close);
+            });
+            measure("direct buffers + gathering write", directory, batches, bytes,
+                    file -> gatheringPath(open(file), false));
+            measure("checksummed, heap frames + write", directory, batches, bytes, file -> {
+                FileChannel channel = open(file);
+                return new OpenPath(batch -> {
+                    ByteArrayOutputStream records = new ByteArrayOutputStream(batch.size() * 64);
+                    for (Transaction row : batch) records.writeBytes(WriteAheadLog.frame(RecordEncoder.line(row)));
+                    ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }, channel::close);
+            });
+            measure("checksummed, direct + gathering write", directory, batches, bytes,
+                    file -> gatheringPath(open(file), true));
+        } finally {
+            try (var leftovers = Files.list(directory)) {
+                for (Path file : leftovers.toList()) Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * The path {@link TransactionAppender} takes for one batch, minus the writer thread.
+     */
+    private static OpenPath gatheringPath(FileChannel channel, boolean checksummed) {
+        return new OpenPath(batch -> {
+            ByteBuffer[] buffers = TransactionAppender.encode(batch, checksummed);
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) remaining += buffer.remaining();
+            while (remaining > 0) remaining -= channel.write(buffers);
+            DirectBufferPool.SHARED.release(buffers);
+        }, channel::close);
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * An append path plus whatever closes its file.
+     */
+    private record OpenPath(AppendPath path, Closeable file) {
+    }
+
+    private interface PathFactory {
+        OpenPath open(Path file) throws IOException;
+    }
+
+    private static void measure(String name, Path directory, List<List<Transaction>> batches, long bytes,
+                                PathFactory factory) throws IOException {
+        long bestNanos = Long.MAX_VALUE;
+        for (int round = 0; round <= ROUNDS; round++) {                 // round 0 warms up
+            Path file = directory.resolve("round.csv");
+            Files.deleteIfExists(file);
+            OpenPath opened = factory.open(file);
+            long start = System.nanoTime();
+            for (List<Transaction> batch : batches) opened.path().append(batch);
+            long elapsed = System.nanoTime() - start;
+            opened.file().close();
+            if (round > 0) bestNanos = Math.min(bestNanos, elapsed);
+        }
+        double seconds = bestNanos / 1e9;
+        System.out.printf("  %-40s %8.0f ms  %,12.0f rows/s  %8.1f MB/s%n", name, bestNanos / 1e6,
+                countRows(batches) / seconds, bytes / (1024.0 * 1024.0) / seconds);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static long countRows(List<List<Transaction>> batches) {
+        long rows = 0;
+        for (List<Transaction> batch : batches) rows += batch.size();
+        return rows;
+    }
+
+    /**
+     * Typical rows – every path starts from the same {@link Transaction}s and pays for
+     * its own encoding.
+     */
+    private static List<List<Transaction>> generateBatches(int rowCount, int batchSize) {
+        List<List<Transaction>> batches = new ArrayList<>();
+        List<Transaction> batch = new ArrayList<>(batchSize);
+        LocalDate firstDay = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < rowCount; i++) {
+            Transaction row = new Transaction(firstDay.plusDays(i % 366), LocalTime.ofSecondOfDay(i * 7L % 86_400),
+                    "desc" + i % 500, "vendor" + i % 250, i % 20_000 - 10_000);
+            batch.add(row);
+            if (batch.size() == batchSize) {
+                batches.add(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) batches.add(batch);
+        return batches;
+    }
+}
@@ -0,0 +1,79 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable read-only view of one field inside a byte buffer.
+ * <p>
+ * Implements {@link CharSequence} (one char per byte) so date and time fields can be
+ * handed to {@code DateTimeFormatter} parsing without first copying them into a String.
+ * The same instance is re-pointed at every field, so callers must not keep it around.
+ */
+final class ByteField implements CharSequence {
+
+    private final ByteBuffer bytes;
+    private int start;                  // absolute offset of the first byte
+    private int length;                 // number of bytes in the field
+
+    ByteField(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Re-points this view at absolute offsets {@code [start, end)} and returns it.
+     */
+    ByteField slice(int start, int end) {
+        this.start = start;
+        this.length = end - start;
+        return this;
+    }
+
+    /* ------------------------------------------------------------------
+       CharSequence
+       ------------------------------------------------------------------ */
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(index);
+        return (char) (bytes.get(start + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().subSequence(from, to);
+    }
+
+    /**
+     * Copies the field into a new String – only used for error messages and fallbacks.
+     */
+    @Override
+    public String toString() {
+        return decode(bytes, start, length, new byte[length]);
+    }
+
+    /* ------------------------------------------------------------------
+       Static helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * Decodes {@code length} UTF-8 bytes at absolute {@code offset} into a String,
+     * using {@code scratch} (which must be large enough) as the copy buffer.
+     */
+    static String decode(ByteBuffer bytes, int offset, int length, byte[] scratch) {
+        bytes.get(offset, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns {@code scratch} if it holds at least {@code needed} bytes, otherwise a bigger array.
+     */
+    static byte[] ensureCapacity(byte[] scratch, int needed) {
+        return scratch.length >= needed ? scratch : new byte[Math.max(needed, scratch.length * 2)];
+    }
+}
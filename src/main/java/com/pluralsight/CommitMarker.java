@@ -0,0 +1,225 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * All-or-nothing batches in the plain text data file.
+ * <p>
+ * A batch is written as one marker line {@code #commit|rows|bytes|crc} followed by its
+ * rows, in a single write. The marker tells readers how many bytes belong to the batch
+ * and their CRC-32, so a batch cut short by a crash (or still being written by another
+ * program) is recognised: loads, the tailer and streaming queries stop in front of it,
+ * and the next start cuts it off. A damaged batch anywhere else in the file is set aside
+ * as a whole, and files are only ever cut into ranges between batches.
+ * <p>
+ * Checksummed logs and gzip files need no marker – there a batch is one record or one
+ * member, which is already verified as a whole.
+ */
+final class CommitMarker {
+
+    static final String PREFIX = "#commit|";
+
+    /**
+     * Largest batch (marker excluded) – keeps the search for a torn batch at the end short.
+     */
+    static final int MAX_BATCH_BYTES = 1 << 20;
+
+    /**
+     * Upper bound for the marker line itself.
+     */
+    private static final int MAX_MARKER_BYTES = 64;
+
+    private static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    private CommitMarker() {
+    }
+
+    /* ------------------------------------------------------------------
+       Writing
+       ------------------------------------------------------------------ */
+
+    /**
+     * The marker line for a batch of {@code rows} lines taking {@code batchBytes} bytes
+     * with checksum {@code crc}; the lines follow it in the same write. Fails if the
+     * batch is too long to be checked on load.
+     */
+    static byte[] marker(int rows, long batchBytes, CRC32 crc) {
+        if (batchBytes > MAX_BATCH_BYTES) {
+            throw new IllegalArgumentException("Batch longer than " + MAX_BATCH_BYTES + " bytes");
+        }
+        return (PREFIX + rows + "|" + batchBytes + "|" + crc.getValue() + System.lineSeparator())
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /* ------------------------------------------------------------------
+       Reading
+       ------------------------------------------------------------------ */
+
+    /**
+     * What a marker line says about the rows after it.
+     *
+     * @param end    offset just after the batch's rows – just after the marker line if
+     *               the marker cannot be read
+     * @param intact whether the rows match the marker's byte count and CRC-32
+     */
+    record Batch(int end, boolean intact) {
+    }
+
+    /**
+     * True if the line {@code [lineStart, lineEnd)} of {@code bytes} is a marker (not a row).
+     */
+    static boolean isMarker(ByteBuffer bytes, int lineStart, int lineEnd) {
+        if (lineEnd - lineStart < PREFIX_BYTES.length) return false;
+        for (int i = 0; i < PREFIX_BYTES.length; i++) {
+            if (bytes.get(lineStart + i) != PREFIX_BYTES[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks the batch announced by the marker line {@code [lineStart, lineEnd)} of
+     * {@code bytes}, whose rows start at {@code batchStart}. Returns null if the rows run
+     * past the buffer's limit, so they cannot be checked here.
+     */
+    static Batch checkBatch(ByteBuffer bytes, int lineStart, int lineEnd, int batchStart) {
+        long[] marker = readMarker(bytes, lineStart, lineEnd);
+        if (marker == null) return new Batch(Math.min(batchStart, bytes.limit()), false);
+        if (batchStart + marker[0] > bytes.limit()) return null;
+
+        int batchEnd = (int) (batchStart + marker[0]);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate().position(batchStart).limit(batchEnd));
+        return new Batch(batchEnd, crc.getValue() == marker[1]);
+    }
+
+    /**
+     * End of the committed data in {@code [from, to)} of a plain data file: {@code to},
+     * or the start of a batch that runs past it or is damaged at the very end.
+     * {@code from} must be the start of a line.
+     */
+    static long committedEnd(Path file, long from, long to) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return committedEnd(channel, from, to);
+        }
+    }
+
+    /**
+     * {@code position}, a line start in a plain data file, moved forward to the end of the
+     * batch it falls inside (if any), so that cutting the file there never splits a batch.
+     * {@code from} is a line start at or before {@code position}; the result is at most
+     * {@code end}.
+     */
+    static long lineStartOutsideBatch(FileChannel channel, long from, long position, long end) throws IOException {
+        // A marker whose batch reaches position starts at most one batch plus a marker before it.
+        long windowStart = Math.max(from, position - MAX_BATCH_BYTES - MAX_MARKER_BYTES - 1);
+        if (windowStart >= position) return position;
+        ByteBuffer window = read(channel, windowStart, position);
+        int limit = window.limit();
+
+        int lineStart = windowStart > from ? afterFirstLineBreak(window) : 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && window.get(lineEnd) != '\n') lineEnd++;
+            if (isMarker(window, lineStart, lineEnd)) {
+                long[] marker = readMarker(window, lineStart, lineEnd);
+                long batchEnd = marker == null ? -1 : windowStart + lineEnd + 1 + marker[0];
+                if (batchEnd > position) {
+                    // Batches end with a line break; step to the next line start in case the count is off.
+                    return Math.min(end, TransactionLoader.nextLineStart(channel, batchEnd - 1, end));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return position;
+    }
+
+    /**
+     * Cuts off a batch left incomplete by a crash and returns the number of bytes removed.
+     * Must run before anything appends to the file.
+     */
+    static long recover(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            long end = committedEnd(channel, 0, fileSize);
+            if (end == fileSize) return 0;
+            channel.truncate(end);
+            channel.force(true);
+            return fileSize - end;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * Only the last {@code MAX_BATCH_BYTES} (plus a marker) can hold an incomplete batch,
+     * so only that window is read. A damaged batch before the very end is committed data
+     * as far as this is concerned – the loader sets it aside when it reaches it.
+     */
+    static long committedEnd(FileChannel channel, long from, long to) throws IOException {
+        long windowStart = Math.max(from, to - MAX_BATCH_BYTES - MAX_MARKER_BYTES);
+        if (windowStart >= to) return to;
+        ByteBuffer window = read(channel, windowStart, to);
+        int limit = window.limit();
+
+        // Unless the window starts at a known line start, skip the partial first line.
+        int lineStart = windowStart > from ? afterFirstLineBreak(window) : 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && window.get(lineEnd) != '\n') lineEnd++;
+            if (isMarker(window, lineStart, lineEnd)) {
+                long markerStart = windowStart + lineStart;
+                if (lineEnd == limit) return markerStart;                  // marker itself is torn
+
+                Batch batch = checkBatch(window, lineStart, lineEnd, lineEnd + 1);
+                if (batch == null) return markerStart;                      // rows not all there yet
+                if (!batch.intact() && batch.end() == limit) return markerStart;
+                lineEnd = batch.end() - 1;                                  // continue after the batch
+            }
+            lineStart = lineEnd + 1;
+        }
+        return to;
+    }
+
+    /**
+     * Byte count and CRC-32 from the marker line {@code [lineStart, lineEnd)}, or null if
+     * it cannot be read.
+     */
+    private static long[] readMarker(ByteBuffer bytes, int lineStart, int lineEnd) {
+        String[] fields = StandardCharsets.US_ASCII.decode(bytes.duplicate()
+                .position(lineStart + PREFIX_BYTES.length).limit(lineEnd)).toString().strip().split("\\|");
+        long batchBytes = fields.length == 3 ? parseOrMinusOne(fields[1]) : -1;
+        long expectedCrc = fields.length == 3 ? parseOrMinusOne(fields[2]) : -1;
+        if (batchBytes < 0 || batchBytes > MAX_BATCH_BYTES || expectedCrc < 0) return null;
+        return new long[]{batchBytes, expectedCrc};
+    }
+
+    /**
+     * Bytes {@code [start, end)} of the file (fewer if it is shorter), ready to read.
+     */
+    private static ByteBuffer read(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate((int) (end - start));
+        while (window.hasRemaining()) {
+            if (channel.read(window, start + window.position()) < 0) break;
+        }
+        return window.flip();
+    }
+
+    private static int afterFirstLineBreak(ByteBuffer window) {
+        int index = 0;
+        while (index < window.limit() && window.get(index) != '\n') index++;
+        return index + 1;
+    }
+
+    private static long parseOrMinusOne(String digits) {
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit) || digits.length() > 18) return -1;
+        return Long.parseLong(digits);
+    }
+}
@@ -0,0 +1,601 @@
+package com.pluralsight;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Support for gzip-compressed data files.
+ * <p>
+ * Files written here are a series of independent gzip members ("blocks"), each holding
+ * whole lines. Every member header carries an extra field ({@code 'F','T'}) with the
+ * member's compressed size, so the loader can find all members without inflating
+ * anything and then inflate and parse them in parallel. The result is still an ordinary
+ * multi-member gzip file that {@code gunzip} reads. Gzip files from other tools lack the
+ * size field; they are inflated sequentially while the parsing still runs in parallel.
+ */
+final class CompressedLedger {
+
+    /* ------------------------------------------------------------------
+       Constants
+       ------------------------------------------------------------------ */
+
+    /**
+     * Uncompressed bytes per member written by {@link #compress}.
+     */
+    private static final int BLOCK_BYTES = 1 << 20;             // 1 MiB
+
+    /**
+     * Consecutive members are grouped into parse tasks of about this many compressed bytes.
+     */
+    private static final long TASK_BYTES = 1L << 20;            // 1 MiB
+
+    /**
+     * Decompressed bytes handed out at a time when a file has to be inflated sequentially.
+     */
+    private static final int STREAM_BLOCK_BYTES = 8 << 20;      // 8 MiB
+
+    private static final int HEADER_BYTES = 20;                 // 10 fixed + 2 XLEN + 8 extra field
+    private static final int TRAILER_BYTES = 8;                 // CRC-32 + uncompressed size
+
+    private static final long NOT_INDEXED = -1;                 // member without our size field
+    private static final long INCOMPLETE = -2;                  // member not fully written yet
+
+    private CompressedLedger() {
+    }
+
+    /**
+     * True if {@code file} starts with the gzip magic bytes.
+     */
+    static boolean isCompressed(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Writing
+       ------------------------------------------------------------------ */
+
+    /**
+     * Compresses {@code length} bytes (whole lines) into one self-describing gzip member.
+     */
+    static byte[] compressBlock(byte[] data, int offset, int length) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 3 + HEADER_BYTES + TRAILER_BYTES);
+        member.writeBytes(new byte[HEADER_BYTES]);             // filled in below, once the size is known
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        byte[] buffer = new byte[64 * 1024];
+        while (!deflater.finished()) {
+            int produced = deflater.deflate(buffer);
+            member.write(buffer, 0, produced);
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, length);
+
+        byte[] bytes = member.toByteArray();
+        ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 0x1f).put((byte) 0x8b)               // magic
+                .put((byte) 8)                                 // deflate
+                .put((byte) 4)                                 // FLG.FEXTRA
+                .putInt(0)                                     // no modification time
+                .put((byte) 0).put((byte) 255)                 // XFL, OS = unknown
+                .putShort((short) 8)                           // XLEN
+                .put((byte) 'F').put((byte) 'T')               // extra field id
+                .putShort((short) 4)                           // extra field length
+                .putInt(bytes.length);                         // whole member size
+        return bytes;
+    }
+
+    /**
+     * Writes a compressed copy of {@code source} (plain or gzip) to {@code target},
+     * cut into members of about 1 MiB of whole lines each.
+     */
+    static void compress(Path source, Path target) throws IOException {
+        try (OutputStream out = Files.newOutputStream(target)) {
+            boolean[] endsWithNewline = {true};
+            forEachBlock(source, BLOCK_BYTES, block -> {
+                try {
+                    out.write(compressBlock(block.array(), block.arrayOffset(), block.remaining()));
+                    endsWithNewline[0] = block.get(block.limit() - 1) == '\n';
+                } catch (IOException ioException) {
+                    throw new UncheckedIOException(ioException);
+                }
+            });
+
+            // Later appends start a new line, so never leave the last line unterminated.
+            if (!endsWithNewline[0]) {
+                byte[] newline = {'\n'};
+                out.write(compressBlock(newline, 0, 1));
+            }
+        } catch (UncheckedIOException writeFailed) {
+            throw writeFailed.getCause();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Loading
+       ------------------------------------------------------------------ */
+
+    /**
+     * Compressed counterpart of {@link TransactionLoader#load}. Offsets are positions in
+     * the compressed file and {@code fromOffset} must be a member boundary. A member that
+     * is still being written is left out; {@code endOffset} then points at its start.
+     */
+    static TransactionLoader.LoadedRange load(Path file, long fromOffset, long toOffset, long firstLine,
+                                              ValuePool pool, AtomicLong progress,
+                                              Consumer<List<Transaction>> rowSink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long endOffset = Math.min(toOffset, channel.size());
+
+            // Walk the member headers and group members into parse tasks.
+            List<Callable<TransactionLoader.ParsedChunk>> chunkTasks = new ArrayList<>();
+            ArrayList<long[]> group = new ArrayList<>();
+            long groupBytes = 0;
+            long position = fromOffset;
+            while (position < endOffset) {
+                long memberSize = memberSize(channel, position, endOffset);
+                if (memberSize == INCOMPLETE) break;
+                if (memberSize == NOT_INDEXED) {
+                    return loadSequentially(channel, fromOffset, endOffset, firstLine, pool, progress, rowSink);
+                }
+                group.add(new long[]{position, memberSize});
+                groupBytes += memberSize;
+                position += memberSize;
+                if (groupBytes >= TASK_BYTES) {
+                    chunkTasks.add(inflateTask(channel, new ArrayList<>(group), pool, progress));
+                    group.clear();
+                    groupBytes = 0;
+                }
+            }
+            if (!group.isEmpty()) chunkTasks.add(inflateTask(channel, group, pool, progress));
+
+            if (chunkTasks.isEmpty()) {
+                return new TransactionLoader.LoadedRange(new ArrayList<>(), new ArrayList<>(), position, firstLine);
+            }
+            return TransactionLoader.runChunks(chunkTasks, firstLine, position, rowSink);
+        }
+    }
+
+    /**
+     * Task that inflates the given members ({@code [offset, size]} pairs) and parses the lines.
+     */
+    private static Callable<TransactionLoader.ParsedChunk> inflateTask(FileChannel channel, List<long[]> members,
+                                                                      ValuePool pool, AtomicLong progress) {
+        return () -> {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            long compressedBytes = 0;
+            for (long[] member : members) {
+                text.writeBytes(inflateMember(channel, member[0], (int) member[1]));
+                compressedBytes += member[1];
+            }
+            TransactionLoader.ParsedChunk chunk = new TransactionLoader.ParsedChunk();
+            TransactionLoader.parseLines(ByteBuffer.wrap(text.toByteArray()), chunk, pool);
+            progress.addAndGet(compressedBytes);
+            return chunk;
+        };
+    }
+
+    /**
+     * Fallback for gzip files without usable member sizes: one thread inflates, the pool
+     * parses. Stops at {@code toOffset}; a member cut off there (still being written) is
+     * a torn tail – it is left out and {@code endOffset} points at its start, so the
+     * tailer picks it up once it is complete.
+     */
+    private static TransactionLoader.LoadedRange loadSequentially(FileChannel channel, long fromOffset, long toOffset,
+                                                                  long firstLine, ValuePool pool, AtomicLong progress,
+                                                                  Consumer<List<Transaction>> rowSink)
+            throws IOException {
+        TransactionLoader.ChunkMerger merger = new TransactionLoader.ChunkMerger(firstLine, rowSink);
+        Consumer<ByteBuffer> parseBlock = block -> {
+            try {
+                merger.submit(() -> {
+                    TransactionLoader.ParsedChunk chunk = new TransactionLoader.ParsedChunk();
+                    TransactionLoader.parseLines(block, chunk, pool);
+                    return chunk;
+                });
+            } catch (IOException parseFailed) {
+                throw new UncheckedIOException(parseFailed);
+            }
+        };
+
+        long endOffset = fromOffset;
+        try (MemberReader members = new MemberReader(channel, fromOffset, toOffset)) {
+            while (members.nextMember(STREAM_BLOCK_BYTES, parseBlock)) {
+                progress.addAndGet(members.position() - endOffset);
+                endOffset = members.position();
+            }
+            members.handOutRest(parseBlock);
+        } catch (UncheckedIOException parseFailed) {
+            throw parseFailed.getCause();
+        }
+        return merger.finish(endOffset);
+    }
+
+    /* ------------------------------------------------------------------
+       Sequential reading (streaming queries, compress, fallback)
+       ------------------------------------------------------------------ */
+
+    /**
+     * Inflates {@code file} front to back and hands over blocks of whole lines, each in
+     * its own array so blocks may be processed on other threads. Checksummed logs are
+     * read through {@link WriteAheadLog#forEachBlock}.
+     */
+    static void forEachBlock(Path file, int blockBytes, Consumer<ByteBuffer> action) throws IOException {
+        if (WriteAheadLog.isLog(file)) {
+            WriteAheadLog.forEachBlock(file, blockBytes, action);
+            return;
+        }
+        try (InputStream raw = Files.newInputStream(file)) {
+            InputStream in = isCompressed(file) ? new GZIPInputStream(raw, 1 << 16) : raw;
+            forEachBlock(in, blockBytes, action);
+        }
+    }
+
+    private static void forEachBlock(InputStream in, int blockBytes, Consumer<ByteBuffer> action) throws IOException {
+        byte[] block = new byte[blockBytes];
+        int filled = 0;
+        while (true) {
+            int read = in.readNBytes(block, filled, block.length - filled);
+            filled += read;
+            boolean endOfStream = filled < block.length;
+
+            int cut = filled;
+            if (!endOfStream) {
+                while (cut > 0 && block[cut - 1] != '\n') cut--;
+                if (cut == 0) {                                 // one line longer than the block
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+            }
+            if (cut > 0) action.accept(ByteBuffer.wrap(block, 0, cut));
+            if (endOfStream) return;
+
+            byte[] next = new byte[blockBytes];
+            filled -= cut;
+            System.arraycopy(block, cut, next, 0, filled);
+            block = next;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Crash recovery
+       ------------------------------------------------------------------ */
+
+    /**
+     * Cuts the file back to the end of its last complete member – dropping a member whose
+     * write was cut short, or whose CRC does not match – and returns the number of bytes
+     * removed. Must run before anything appends to the file, or the next member would land
+     * behind the torn one where no gzip reader gets past it. Damage that is not at the very
+     * end is reported and left in place; loading then stops in front of it.
+     */
+    static long recover(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            long end;
+            try {
+                end = completeEnd(channel, fileSize);
+            } catch (IOException damaged) {
+                System.out.println(damaged.getMessage() + " in " + file + " – the rest of the file is not loaded.");
+                return 0;
+            }
+            if (end == fileSize) return 0;
+            channel.truncate(end);
+            channel.force(true);
+            return fileSize - end;
+        }
+    }
+
+    /**
+     * Offset just after the last complete member. Indexed members are skipped by their
+     * size field; from the first member without one the members are inflated in turn.
+     */
+    private static long completeEnd(FileChannel channel, long fileSize) throws IOException {
+        long offset = 0;
+        long lastMember = -1;
+        while (offset < fileSize) {
+            long size = memberSize(channel, offset, fileSize);
+            if (size == INCOMPLETE) return offset;
+            if (size == NOT_INDEXED) break;
+            lastMember = offset;
+            offset += size;
+        }
+        if (offset == fileSize) {
+            if (lastMember < 0) return fileSize;
+            try {
+                inflateMember(channel, lastMember, (int) (fileSize - lastMember));
+                return fileSize;
+            } catch (IOException torn) {
+                return lastMember;                              // size field written, body torn
+            }
+        }
+
+        Consumer<ByteBuffer> discard = block -> {
+        };
+        try (MemberReader members = new MemberReader(channel, offset, fileSize)) {
+            while (members.nextMember(STREAM_BLOCK_BYTES, discard)) {
+                offset = members.position();
+            }
+        }
+        return offset;
+    }
+
+    /* ------------------------------------------------------------------
+       Members
+       ------------------------------------------------------------------ */
+
+    /**
+     * Size of the member starting at {@code offset}, or {@link #NOT_INDEXED} / {@link #INCOMPLETE}.
+     * A size field that cannot be right – smaller than an empty member, or reaching past
+     * the end of the file – counts as not indexed, so the sequential reader checks the
+     * member itself instead of trusting the field.
+     */
+    private static long memberSize(FileChannel channel, long offset, long endOffset) throws IOException {
+        if (endOffset - offset < HEADER_BYTES) return INCOMPLETE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, offset);
+
+        boolean ours = (header.get(0) & 0xFF) == 0x1f && (header.get(1) & 0xFF) == 0x8b
+                && (header.get(3) & 4) != 0 && header.getShort(10) == 8
+                && header.get(12) == 'F' && header.get(13) == 'T' && header.getShort(14) == 4;
+        if (!ours) return NOT_INDEXED;
+
+        long size = header.getInt(16) & 0xFFFFFFFFL;
+        if (size < HEADER_BYTES + TRAILER_BYTES || offset + size > channel.size()) return NOT_INDEXED;
+        return offset + size <= endOffset ? size : INCOMPLETE;
+    }
+
+    /**
+     * Inflates one member and checks its CRC-32.
+     */
+    private static byte[] inflateMember(FileChannel channel, long offset, int size) throws IOException {
+        ByteBuffer member = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, member, offset);
+        int expectedCrc = member.getInt(size - TRAILER_BYTES);
+        int length = member.getInt(size - TRAILER_BYTES + 4);
+        if (length < 0) throw new IOException("Corrupt gzip member at offset " + offset);
+
+        byte[] text = new byte[length];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member.array(), HEADER_BYTES, size - HEADER_BYTES - TRAILER_BYTES);
+            int produced = 0;
+            while (produced < length && !inflater.finished()) {
+                int n = inflater.inflate(text, produced, length - produced);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                produced += n;
+            }
+            if (produced != length) throw new IOException("Truncated gzip member at offset " + offset);
+        } catch (DataFormatException corrupt) {
+            throw new IOException("Corrupt gzip member at offset " + offset, corrupt);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        if ((int) crc.getValue() != expectedCrc) throw new IOException("CRC mismatch in gzip member at offset " + offset);
+        return text;
+    }
+
+    /**
+     * Reads the gzip members in {@code [start, end)} of a file one after another without
+     * trusting any size field, and knows the offset where each complete member ends.
+     * Inflated text is handed out in blocks of whole lines.
+     */
+    private static final class MemberReader implements AutoCloseable {
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer input = ByteBuffer.allocate(1 << 16);   // compressed bytes not yet used
+        private long inputEnd;                                  // file offset just after the bytes in input
+        private final Inflater inflater = new Inflater(true);
+        private final CRC32 crc = new CRC32();
+        private byte[] text = new byte[1 << 16];                // inflated, not yet handed out
+        private int textLength;
+
+        MemberReader(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.end = end;
+            this.inputEnd = start;
+            input.limit(0);
+        }
+
+        /**
+         * File offset of the next unread byte – after {@link #nextMember}, the end of that member.
+         */
+        long position() {
+            return inputEnd - input.remaining();
+        }
+
+        /**
+         * Inflates the next member, handing out whole lines whenever {@code blockBytes}
+         * have gathered. Returns false if no complete member is left before the end; the
+         * text of a member cut off there is dropped again.
+         *
+         * @throws IOException if a member is corrupt, or is cut off after part of it was
+         *                     already handed out (only possible for very large members)
+         */
+        boolean nextMember(int blockBytes, Consumer<ByteBuffer> action) throws IOException {
+            long memberStart = position();
+            int memberTextStart = textLength;
+            boolean handedOut = false;
+            if (!readHeader(memberStart)) return cutOff(memberStart, memberTextStart, handedOut);
+
+            inflater.reset();
+            crc.reset();
+            long memberLength = 0;
+            if (input.hasRemaining()) inflater.setInput(input.array(), input.position(), input.remaining());
+            try {
+                while (!inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        input.position(input.limit());          // all given to the inflater
+                        if (!fill()) return cutOff(memberStart, memberTextStart, handedOut);
+                        inflater.setInput(input.array(), input.position(), input.remaining());
+                    }
+                    if (inflater.needsDictionary()) throw new IOException("Corrupt gzip member at offset " + memberStart);
+                    if (textLength == text.length) text = Arrays.copyOf(text, text.length * 2);
+                    int produced = inflater.inflate(text, textLength, text.length - textLength);
+                    crc.update(text, textLength, produced);
+                    textLength += produced;
+                    memberLength += produced;
+                    if (textLength >= blockBytes) {
+                        int cut = handOut(action);
+                        if (cut > memberTextStart) handedOut = true;
+                        memberTextStart = Math.max(0, memberTextStart - cut);
+                    }
+                }
+            } catch (DataFormatException corrupt) {
+                throw new IOException("Corrupt gzip member at offset " + memberStart, corrupt);
+            }
+            input.position(input.limit() - inflater.getRemaining());   // bytes after the deflate data
+
+            long expectedCrc = readIntLE();
+            long expectedLength = readIntLE();
+            if (expectedCrc < 0 || expectedLength < 0) return cutOff(memberStart, memberTextStart, handedOut);
+            if (expectedCrc != crc.getValue() || expectedLength != (memberLength & 0xFFFFFFFFL)) {
+                throw new IOException("CRC mismatch in gzip member at offset " + memberStart);
+            }
+            return true;
+        }
+
+        /**
+         * Hands out whatever text is left, even without a final line break.
+         */
+        void handOutRest(Consumer<ByteBuffer> action) {
+            if (textLength > 0) action.accept(ByteBuffer.wrap(Arrays.copyOf(text, textLength)));
+            textLength = 0;
+        }
+
+        @Override
+        public void close() {
+            inflater.end();
+        }
+
+        private boolean cutOff(long memberStart, int memberTextStart, boolean handedOut) throws IOException {
+            if (handedOut) throw new IOException("Truncated gzip member at offset " + memberStart);
+            textLength = memberTextStart;
+            return false;
+        }
+
+        /**
+         * Hands out the text up to its last line break; returns how many bytes that was.
+         */
+        private int handOut(Consumer<ByteBuffer> action) {
+            int cut = textLength;
+            while (cut > 0 && text[cut - 1] != '\n') cut--;
+            if (cut == 0) return 0;                             // one line longer than the block
+            action.accept(ByteBuffer.wrap(Arrays.copyOf(text, cut)));
+            System.arraycopy(text, cut, text, 0, textLength - cut);
+            textLength -= cut;
+            return cut;
+        }
+
+        /**
+         * Skips the member header; false if the range ends inside it.
+         */
+        private boolean readHeader(long memberStart) throws IOException {
+            int[] fixed = new int[10];
+            for (int i = 0; i < fixed.length; i++) {
+                fixed[i] = readByte();
+                if (fixed[i] < 0) return false;
+            }
+            if (fixed[0] != 0x1f || fixed[1] != 0x8b || fixed[2] != 8) {
+                throw new IOException("Not a gzip member at offset " + memberStart);
+            }
+            int flags = fixed[3];
+            if ((flags & 4) != 0) {                             // FEXTRA
+                int low = readByte();
+                int high = readByte();
+                if (low < 0 || high < 0 || !skip(low | high << 8)) return false;
+            }
+            if ((flags & 8) != 0 && !skipPastZero()) return false;     // FNAME
+            if ((flags & 16) != 0 && !skipPastZero()) return false;    // FCOMMENT
+            return (flags & 2) == 0 || skip(2);                 // FHCRC
+        }
+
+        private boolean skip(int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                if (readByte() < 0) return false;
+            }
+            return true;
+        }
+
+        private boolean skipPastZero() throws IOException {
+            int b;
+            do {
+                b = readByte();
+            } while (b > 0);
+            return b == 0;
+        }
+
+        /**
+         * Unsigned little-endian int, or -1 if the range ends first.
+         */
+        private long readIntLE() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = readByte();
+                if (b < 0) return -1;
+                value |= (long) b << (8 * i);
+            }
+            return value;
+        }
+
+        private int readByte() throws IOException {
+            if (!input.hasRemaining() && !fill()) return -1;
+            return input.get() & 0xFF;
+        }
+
+        /**
+         * Reads more of the range into {@code input}; false if nothing is left.
+         */
+        private boolean fill() throws IOException {
+            input.compact();
+            long left = end - inputEnd;
+            if (left < input.remaining()) input.limit(input.position() + (int) left);
+            int read = left > 0 ? channel.read(input, inputEnd) : -1;
+            input.flip();
+            if (read <= 0) return false;
+            inputEnd += read;
+            return true;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) throw new IOException("Unexpected end of file");
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
@@ -0,0 +1,68 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable direct (off-heap) buffers for the append path.
+ * <p>
+ * Records encoded straight into direct buffers can be handed to a gathering
+ * {@code FileChannel.write} as they are – the JDK would otherwise copy every heap
+ * buffer into a temporary direct one first. Allocating direct memory is slow, so
+ * released buffers are kept (up to a limit) and handed out again. Safe to use from
+ * any thread.
+ */
+final class DirectBufferPool {
+
+    /**
+     * Size of every pooled buffer – a few hundred records.
+     */
+    static final int BUFFER_BYTES = 16 << 10;
+
+    /**
+     * At most this many idle buffers (4 MiB) are kept; extra ones are left to the GC.
+     */
+    private static final int MAX_IDLE_BUFFERS = 256;
+
+    /**
+     * The pool shared by all appenders.
+     */
+    static final DirectBufferPool SHARED = new DirectBufferPool();
+
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * An empty buffer of {@link #BUFFER_BYTES}, reused if one is idle.
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) return ByteBuffer.allocateDirect(BUFFER_BYTES);
+        idleCount.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * An empty buffer with room for at least {@code bytes}; larger than a pooled
+     * buffer only for unusually long records (those are not kept afterwards).
+     */
+    ByteBuffer acquire(int bytes) {
+        return bytes <= BUFFER_BYTES ? acquire() : ByteBuffer.allocateDirect(bytes);
+    }
+
+    /**
+     * Gives buffers back once their contents have been written. Buffers that did not
+     * come from this pool are ignored.
+     */
+    void release(ByteBuffer... buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (!buffer.isDirect() || buffer.capacity() != BUFFER_BYTES) continue;
+            if (idleCount.incrementAndGet() > MAX_IDLE_BUFFERS) {
+                idleCount.decrementAndGet();
+                continue;
+            }
+            idle.add(buffer);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.pluralsight;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Keeps exact duplicate rows out of the ledger without scanning it on every save.
+ * <p>
+ * Every row in memory has its 64-bit fingerprint (date, time, description, vendor and
+ * amount in cents) added to a Bloom filter. A new row whose fingerprint is not in the
+ * filter is certainly new – the common case costs a few bit lookups. Only when the
+ * filter reports a possible hit is the suspect looked up in an exact index from
+ * fingerprint to row number and compared with those few stored rows. The filter grows
+ * by adding a larger layer, so it never needs the old rows again.
+ * <p>
+ * The index follows the ledger's row numbers, so the caller reports every row that is
+ * stored, moved or removed. Filter and index live on or off the heap, like the
+ * ledger. Not thread-safe: the caller guards it with the same lock as the ledger.
+ */
+final class DuplicateGuard {
+
+    /* ------------------------------------------------------------------
+       Constants
+       ------------------------------------------------------------------ */
+
+    /**
+     * 16 bits and 8 probes per row give roughly one false "maybe" in 1,750 per layer.
+     */
+    private static final int BITS_PER_ROW = 16;
+    private static final int PROBES = 8;
+    private static final int FIRST_LAYER_ROWS = 1 << 16;
+
+    /**
+     * Initial index size in slots; the index doubles once it is three quarters full.
+     */
+    private static final int FIRST_INDEX_SLOTS = 1 << 12;
+
+    /* ------------------------------------------------------------------
+       Filter layers
+       ------------------------------------------------------------------ */
+
+    /**
+     * One fixed-size Bloom filter; a full layer is kept and a bigger one started.
+     */
+    private static final class Layer {
+        final LedgerColumns.Longs words;
+        final long bitCount;
+        final int capacity;
+        int rows;
+
+        Layer(int capacity, boolean offHeap) {
+            this.capacity = capacity;
+            this.bitCount = (long) capacity * BITS_PER_ROW;
+            this.words = LedgerColumns.newLongs(offHeap);
+            words.ensureCapacity((int) ((bitCount + 63) >>> 6));
+        }
+
+        void add(long fingerprint) {
+            long first = fingerprint & 0xFFFFFFFFL;
+            long step = (fingerprint >>> 32) | 1;
+            for (int probe = 0; probe < PROBES; probe++) {
+                long bit = (first + probe * step) % bitCount;
+                int word = (int) (bit >>> 6);
+                words.set(word, words.get(word) | 1L << bit);
+            }
+            rows++;
+        }
+
+        boolean mightContain(long fingerprint) {
+            long first = fingerprint & 0xFFFFFFFFL;
+            long step = (fingerprint >>> 32) | 1;
+            for (int probe = 0; probe < PROBES; probe++) {
+                long bit = (first + probe * step) % bitCount;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+    }
+
+    private final ArrayList<Layer> layers = new ArrayList<>();
+
+    /* ------------------------------------------------------------------
+       Exact index
+       ------------------------------------------------------------------ */
+
+    /**
+     * Open-addressing table with one long per slot: the high half of the row's
+     * fingerprint above {@code row + 1} (0 = free slot). The slot is chosen from that
+     * high half, so an entry can be moved without knowing the rest of the fingerprint;
+     * rows sharing the high half are told apart by comparing the stored rows.
+     */
+    private LedgerColumns.Longs index;
+    private int indexSlots;
+    private int indexMask;
+    private int indexedRows;
+
+    private final boolean offHeap;
+
+    /**
+     * Starts empty, on or off the heap; two rows are duplicates when date, time,
+     * description, vendor and amount are all equal.
+     */
+    DuplicateGuard(boolean offHeap) {
+        this.offHeap = offHeap;
+        clear();
+    }
+
+    /* ------------------------------------------------------------------
+       Rows that are already stored
+       ------------------------------------------------------------------ */
+
+    /**
+     * Remembers rows that are in the ledger anyway (loaded or appended by someone else),
+     * stored from row {@code firstRow} on.
+     */
+    void addAll(List<Transaction> rows, int firstRow) {
+        reserve(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            long fingerprint = fingerprint(rows.get(i));
+            add(fingerprint);
+            indexRow(fingerprint, firstRow + i);
+        }
+    }
+
+    /**
+     * Indexes rows that {@link #withoutDuplicates} accepted once they are stored from
+     * row {@code firstRow} on (the filter already holds them).
+     */
+    void stored(List<Transaction> rows, int firstRow) {
+        for (int i = 0; i < rows.size(); i++) indexRow(fingerprint(rows.get(i)), firstRow + i);
+    }
+
+    /**
+     * Follows rows {@code [firstRow, firstRow + count)} of {@code ledger}, which used to
+     * be {@code shift} rows further up (a positive shift) or down.
+     */
+    void moved(LedgerColumns ledger, int firstRow, int count, int shift) {
+        // Like a memmove: start at the end the rows are moving towards, so no row number
+        // is handed out while another entry still has it.
+        for (int i = 0; i < count; i++) {
+            int row = shift > 0 ? firstRow + count - 1 - i : firstRow + i;
+            long fingerprint = fingerprint(ledger.sortKey(row), ledger.description(row),
+                    ledger.vendor(row), ledger.cents(row));
+            int slot = findSlot(fingerprint, row - shift);
+            if (slot >= 0) index.set(slot, entry(fingerprint, row));
+        }
+    }
+
+    /**
+     * Forgets {@code row}, which has just been taken out of {@code ledger}; the rows
+     * behind it have moved up by one.
+     */
+    void removed(LedgerColumns ledger, Transaction row, int rowNumber) {
+        int slot = findSlot(fingerprint(row), rowNumber);
+        if (slot >= 0) deleteSlot(slot);
+        moved(ledger, rowNumber, ledger.size() - rowNumber, -1);
+    }
+
+    /**
+     * Starts again from just the rows in {@code ledger} (after rows were taken out of
+     * the front).
+     */
+    void rebuild(LedgerColumns ledger) {
+        clear();
+        reserve(ledger.size());
+        for (int row = 0; row < ledger.size(); row++) {
+            long fingerprint = fingerprint(ledger.sortKey(row), ledger.description(row),
+                    ledger.vendor(row), ledger.cents(row));
+            add(fingerprint);
+            indexRow(fingerprint, row);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Filtering new rows
+       ------------------------------------------------------------------ */
+
+    /**
+     * Returns the candidates (in order) that are neither in {@code storedRows} nor repeat
+     * an earlier candidate, and adds them to the filter; the caller reports them with
+     * {@link #stored} once they are in the ledger. Exact duplicates are left out.
+     */
+    List<Transaction> withoutDuplicates(Collection<Transaction> candidates, LedgerColumns storedRows) {
+        reserve(candidates.size());
+
+        // Pass 1: the filter sorts out the certainly-new rows; the rest are suspects.
+        long[] fingerprints = new long[candidates.size()];
+        HashSet<Long> suspects = new HashSet<>();
+        int position = 0;
+        for (Transaction candidate : candidates) {
+            long fingerprint = fingerprint(candidate);
+            fingerprints[position++] = fingerprint;
+            if (mightContain(fingerprint)) {
+                suspects.add(fingerprint);
+            } else {
+                add(fingerprint);
+            }
+        }
+        if (suspects.isEmpty()) return new ArrayList<>(candidates);
+
+        // Pass 2: look each suspect up in the index, and walk the batch in order so a
+        // row repeated within the batch is kept once.
+        HashSet<String> batchLines = new HashSet<>();
+        ArrayList<Transaction> accepted = new ArrayList<>(candidates.size());
+        position = 0;
+        for (Transaction candidate : candidates) {
+            long fingerprint = fingerprints[position++];
+            if (suspects.contains(fingerprint)) {
+                if (isStored(fingerprint, candidate, storedRows)) continue;
+                if (!batchLines.add(RecordEncoder.line(candidate))) continue;
+                add(fingerprint);
+            }
+            accepted.add(candidate);
+        }
+        return accepted;
+    }
+
+    /**
+     * Bytes reserved for the filter and the index.
+     */
+    long bytes() {
+        long bytes = index.bytes();
+        for (Layer layer : layers) bytes += layer.words.bytes();
+        return bytes;
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private boolean mightContain(long fingerprint) {
+        for (Layer layer : layers) {
+            if (layer.mightContain(fingerprint)) return true;
+        }
+        return false;
+    }
+
+    private void add(long fingerprint) {
+        layers.get(layers.size() - 1).add(fingerprint);
+    }
+
+    /**
+     * Starts a new layer when the current one cannot take {@code moreRows} without
+     * losing accuracy; it is at least twice as big as the last one.
+     */
+    private void reserve(int moreRows) {
+        Layer last = layers.get(layers.size() - 1);
+        if (last.rows + moreRows <= last.capacity) return;
+        long capacity = Math.max(2L * last.capacity, moreRows);
+        layers.add(new Layer((int) Math.min(capacity, Integer.MAX_VALUE / BITS_PER_ROW), offHeap));
+    }
+
+    private void clear() {
+        layers.clear();
+        layers.add(new Layer(FIRST_LAYER_ROWS, offHeap));
+        index = newIndex(FIRST_INDEX_SLOTS);
+        indexedRows = 0;
+    }
+
+    /**
+     * Whether a stored row indexed under {@code fingerprint} equals {@code candidate}.
+     */
+    private boolean isStored(long fingerprint, Transaction candidate, LedgerColumns storedRows) {
+        long tag = fingerprint >>> 32;
+        for (int slot = home(tag); index.get(slot) != 0; slot = (slot + 1) & indexMask) {
+            long entry = index.get(slot);
+            if (entry >>> 32 != tag) continue;
+            int row = (int) entry - 1;
+            if (storedRows.sortKey(row) == candidate.getSortKey()
+                    && storedRows.cents(row) == candidate.getAmountCents()
+                    && storedRows.description(row).equals(candidate.getDescription())
+                    && storedRows.vendor(row).equals(candidate.getVendor())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void indexRow(long fingerprint, int row) {
+        if (++indexedRows * 4L > indexSlots * 3L) resizeIndex(indexSlots * 2);
+        long entry = entry(fingerprint, row);
+        int slot = home(entry >>> 32);
+        while (index.get(slot) != 0) slot = (slot + 1) & indexMask;
+        index.set(slot, entry);
+    }
+
+    /**
+     * Slot of the entry for {@code row} under {@code fingerprint}, or -1.
+     */
+    private int findSlot(long fingerprint, int row) {
+        long entry = entry(fingerprint, row);
+        for (int slot = home(entry >>> 32); index.get(slot) != 0; slot = (slot + 1) & indexMask) {
+            if (index.get(slot) == entry) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties {@code slot} and moves later entries of the same run back into the gap,
+     * so lookups never need tombstones.
+     */
+    private void deleteSlot(int slot) {
+        indexedRows--;
+        int gap = slot;
+        for (int next = (gap + 1) & indexMask; index.get(next) != 0; next = (next + 1) & indexMask) {
+            int home = home(index.get(next) >>> 32);
+            // The entry may fill the gap unless its home lies cyclically in (gap, next].
+            if (((next - home) & indexMask) >= ((next - gap) & indexMask)) {
+                index.set(gap, index.get(next));
+                gap = next;
+            }
+        }
+        index.set(gap, 0);
+    }
+
+    private void resizeIndex(int slotCount) {
+        LedgerColumns.Longs old = index;
+        int oldSlots = indexSlots;
+        index = newIndex(slotCount);
+        for (int oldSlot = 0; oldSlot < oldSlots; oldSlot++) {
+            long entry = old.get(oldSlot);
+            if (entry == 0) continue;
+            int slot = home(entry >>> 32);
+            while (index.get(slot) != 0) slot = (slot + 1) & indexMask;
+            index.set(slot, entry);
+        }
+    }
+
+    /**
+     * An empty index of {@code slotCount} slots (a power of two).
+     */
+    private LedgerColumns.Longs newIndex(int slotCount) {
+        LedgerColumns.Longs slots = LedgerColumns.newLongs(offHeap);
+        slots.ensureCapacity(slotCount);
+        indexSlots = slotCount;
+        indexMask = slotCount - 1;
+        return slots;
+    }
+
+    private int home(long tag) {
+        return (int) ((tag * 0x9E3779B97F4A7C15L) >>> 32) & indexMask;
+    }
+
+    private static long entry(long fingerprint, int row) {
+        return (fingerprint >>> 32) << 32 | (row + 1L);
+    }
+
+    /**
+     * 64-bit hash of everything that ends up in the stored line. Rows with equal lines
+     * always get equal fingerprints; different rows rarely do.
+     */
+    private static long fingerprint(Transaction row) {
+        return fingerprint(row.getSortKey(), row.getDescription(), row.getVendor(), row.getAmountCents());
+    }
+
+    private static long fingerprint(long sortKey, String description, String vendor, long cents) {
+        long hash = sortKey;
+        hash = hash * 0x9E3779B97F4A7C15L + description.hashCode();
+        hash = hash * 0x9E3779B97F4A7C15L + vendor.hashCode();
+        hash = hash * 0x9E3779B97F4A7C15L + cents;
+        // SplitMix64 finaliser spreads the bits over the whole word.
+        hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+        return hash ^ (hash >>> 31);
+    }
+}
@@ -0,0 +1,269 @@
+package com.pluralsight;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Fast decoders for the fixed-width fields of the data file.
+ * <p>
+ * Rows written by {@code saveTransaction} always look like
+ * {@code yyyy-MM-dd|HH:mm:ss|…|…|-1234.56}. When a field has exactly that shape its
+ * digits are turned into ints / longs directly; any other shape falls back to the
+ * general parsers so unusual but valid input still loads the same way as before.
+ */
+final class FieldDecoder {
+
+    /**
+     * Returned by the primitive decoders when the field does not have the fast shape.
+     */
+    static final int NO_FAST_PATH = Integer.MIN_VALUE;
+    static final long NO_FAST_CENTS = Long.MIN_VALUE;
+
+    /**
+     * Returned by {@link #tryParseCents} when the text is not a usable amount.
+     */
+    static final long NOT_AN_AMOUNT = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private FieldDecoder() {
+    }
+
+    /* ------------------------------------------------------------------
+       Dates  (yyyy-MM-dd)
+       ------------------------------------------------------------------ */
+
+    /**
+     * Decodes {@code yyyy-MM-dd} into {@code yyyy * 10000 + MM * 100 + dd}, or returns
+     * {@link #NO_FAST_PATH} if the text is not ten characters of that exact shape, the
+     * year is 0000 (not a year-of-era, so {@code yyyy} rejects it) or the day does not
+     * exist in that month.
+     */
+    static int decodeDate(CharSequence text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') return NO_FAST_PATH;
+
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1) return NO_FAST_PATH;
+        if (day > 28 && day > LocalDate.of(year, month, 1).lengthOfMonth()) return NO_FAST_PATH;
+
+        return year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} date, using the digit decoder when possible.
+     */
+    static LocalDate parseDate(CharSequence text) {
+        int packed = decodeDate(text);
+        if (packed == NO_FAST_PATH) return LocalDate.parse(text, DATE_FORMATTER);
+        return LocalDate.of(packed / 10000, packed / 100 % 100, packed % 100);
+    }
+
+    /**
+     * Whether {@link #parseDate} accepts {@code text}.
+     */
+    static boolean isDate(CharSequence text) {
+        if (decodeDate(text) != NO_FAST_PATH) return true;
+        try {
+            LocalDate.parse(text, DATE_FORMATTER);
+            return true;
+        } catch (DateTimeParseException bad) {
+            return false;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Times  (HH:mm:ss)
+       ------------------------------------------------------------------ */
+
+    /**
+     * Decodes {@code HH:mm:ss} into seconds since midnight, or returns {@link #NO_FAST_PATH}.
+     */
+    static int decodeSecondOfDay(CharSequence text) {
+        if (text.length() != 8 || text.charAt(2) != ':' || text.charAt(5) != ':') return NO_FAST_PATH;
+
+        int hour = digits(text, 0, 2);
+        int minute = digits(text, 3, 5);
+        int second = digits(text, 6, 8);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) return NO_FAST_PATH;
+
+        return hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Parses a {@code HH:mm:ss} time, using the digit decoder when possible.
+     */
+    static LocalTime parseTime(CharSequence text) {
+        int secondOfDay = decodeSecondOfDay(text);
+        if (secondOfDay == NO_FAST_PATH) return LocalTime.parse(text, TIME_FORMATTER);
+        return LocalTime.ofSecondOfDay(secondOfDay);
+    }
+
+    /**
+     * Whether {@link #parseTime} accepts {@code text}.
+     */
+    static boolean isTime(CharSequence text) {
+        if (decodeSecondOfDay(text) != NO_FAST_PATH) return true;
+        try {
+            LocalTime.parse(text, TIME_FORMATTER);
+            return true;
+        } catch (DateTimeParseException bad) {
+            return false;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Amounts  (-1234.56)
+       ------------------------------------------------------------------ */
+
+    /**
+     * Decodes an optionally signed amount with exactly two decimals into whole cents,
+     * or returns {@link #NO_FAST_CENTS}. At most 18 digits are accepted so the result
+     * always fits in a long.
+     */
+    static long decodeCents(CharSequence text) {
+        int length = text.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            index++;
+        }
+        int digitCount = length - index - 1;                        // everything except the '.'
+        if (digitCount < 3 || digitCount > 18 || text.charAt(length - 3) != '.') return NO_FAST_CENTS;
+
+        long cents = 0;
+        for (int i = index; i < length; i++) {
+            if (i == length - 3) continue;                          // the decimal point
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return NO_FAST_CENTS;
+            cents = cents * 10 + digit;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Parses an amount into whole cents, rounding any further decimals half-up
+     * (1.005 gives 101, -1.005 gives -101). Plain decimals go through
+     * {@link #tryParseCents}. Everything else {@link Double#parseDouble} reads is accepted
+     * as before – surrounding whitespace, "1e3", "0x1p4", "2.5d" – except NaN and Infinity;
+     * decimal text is still converted exactly, through BigDecimal.
+     *
+     * @throws NumberFormatException if the text is not a finite number or too large for a long of cents
+     */
+    static long parseCents(CharSequence text) {
+        long cents = tryParseCents(text);
+        if (cents != NOT_AN_AMOUNT) return cents;
+
+        String number = text.toString();
+        double value = Double.parseDouble(number);                  // decides what is a number, as before
+        if (!Double.isFinite(value)) throw new NumberFormatException("Not a finite amount: " + text);
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(number.trim());
+        } catch (NumberFormatException notDecimal) {
+            amount = BigDecimal.valueOf(value);                     // hexadecimal or with a d / f suffix
+        }
+        try {
+            return toCents(amount);
+        } catch (ArithmeticException tooLarge) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+    }
+
+    /**
+     * Whether {@link #parseCents} accepts {@code text}.
+     */
+    static boolean isAmount(CharSequence text) {
+        if (tryParseCents(text) != NOT_AN_AMOUNT) return true;
+        try {
+            parseCents(text);
+            return true;
+        } catch (NumberFormatException bad) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a plain decimal amount ({@code [+-]digits[.digits]}) into whole cents without
+     * ever throwing, rounding like {@link #parseCents}. Returns {@link #NOT_AN_AMOUNT} if
+     * the text has any other shape (blank, exponent, letters, …) or does not fit in a long.
+     * <p>
+     * Two-decimal amounts go through {@link #decodeCents}; the rest are read digit by
+     * digit, and only numbers with more than 16 whole digits go through BigDecimal.
+     */
+    static long tryParseCents(CharSequence text) {
+        long cents = decodeCents(text);
+        if (cents != NO_FAST_CENTS) return cents;
+
+        int length = text.length();
+        int index = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            index++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        int fraction = 0;                                           // first two decimals
+        int fractionDigits = -1;                                    // -1 until the '.' is seen
+        boolean roundUp = false;                                    // third decimal is 5 or more
+        for (; index < length; index++) {
+            char c = text.charAt(index);
+            if (c >= '0' && c <= '9') {
+                if (fractionDigits < 0) {
+                    if (wholeDigits < 17) whole = whole * 10 + (c - '0');
+                    wholeDigits++;
+                } else {
+                    if (fractionDigits < 2) fraction = fraction * 10 + (c - '0');
+                    if (fractionDigits == 2) roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return NOT_AN_AMOUNT;
+            }
+        }
+        if (wholeDigits + Math.max(fractionDigits, 0) == 0) return NOT_AN_AMOUNT;
+        if (wholeDigits > 16) {
+            try {
+                return toCents(new BigDecimal(text.toString()));
+            } catch (ArithmeticException tooLarge) {
+                return NOT_AN_AMOUNT;
+            }
+        }
+
+        if (fractionDigits == 1) fraction *= 10;
+        cents = whole * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -cents : cents;
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * Value of the ASCII digits in {@code [from, to)}, or -1 if any char is not a digit.
+     */
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -1,13 +1,28 @@
 package com.pluralsight;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class FinancialTracker {
     /* ------------------------------------------------------------------
@@ -15,15 +30,41 @@ public class FinancialTracker {
        ------------------------------------------------------------------ */
 
     /**
-     * In-memory list that holds every Transaction object.
+     * Keep the ledger's rows and strings outside the Java heap (-Dtracker.offHeap=true),
+     * so a huge ledger does not need a huge heap (see {@link OffHeapStore}).
      */
-    private static final ArrayList<Transaction> transactionList = new ArrayList<>();
+    private static final boolean OFF_HEAP = Boolean.getBoolean("tracker.offHeap");
+
+    /**
+     * In-memory ledger: every transaction, stored column by column (see {@link LedgerColumns}).
+     * Guarded by its own lock.
+     */
+    private static final LedgerColumns ledger = new LedgerColumns(OFF_HEAP);
+
+    /**
+     * Fingerprints of every row in {@code ledger}, so saves can refuse exact
+     * duplicates (e.g. an import run twice) without scanning. Told about every row that
+     * is stored, moved or removed; guarded by the ledger lock.
+     */
+    private static final DuplicateGuard duplicateGuard = new DuplicateGuard(OFF_HEAP);
+
+    /**
+     * Canonical dates, times, descriptions and vendors shared by all loaded rows; the
+     * strings only for the heap ledger (an off-heap one keeps them in its dictionaries).
+     */
+    private static final ValuePool valuePool = new ValuePool(!OFF_HEAP);
 
     /**
      * Data file – created automatically if it does not exist.
      */
     private static final String FILE_NAME = "transactions.csv";
 
+    /**
+     * Rows of the data file that fail validation are copied here (with their line
+     * numbers) instead of aborting the load.
+     */
+    private static final String QUARANTINE_FILE_NAME = FILE_NAME + ".quarantine";
+
     /**
      * Date / time patterns used in prompts and parsing.
      */
@@ -35,12 +76,121 @@ public class FinancialTracker {
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern(TIME_PATTERN);
     private static final DateTimeFormatter DATETIME_FORMATTER = DateTimeFormatter.ofPattern(DATETIME_PATTERN);
 
+    /**
+     * Background load state: completed once the data file is in {@code ledger},
+     * plus how many of the file's bytes have been processed so far (for "loading N%").
+     */
+    private static final CompletableFuture<Void> ledgerLoaded = new CompletableFuture<>();
+    private static final AtomicLong bytesLoaded = new AtomicLong();
+    private static volatile long bytesToLoad;
+
+    /**
+     * Rows this program appended itself, oldest first. The tailer sees them in the
+     * file like any other appended row and skips them because they are already in
+     * {@code ledger}. Only recorded while a tailer runs or is about to, and a row still
+     * not seen two tailer passes after its write completed is dropped, so the queue
+     * stays as short as the writes in flight. Guarded by the {@code ledger} lock.
+     */
+    private static final ArrayDeque<OwnRow> ownAppendedRows = new ArrayDeque<>();
+
+    /**
+     * Batches the tailer has handed over so far. Guarded by the {@code ledger} lock.
+     */
+    private static long tailerPasses;
+
+    /**
+     * Follows the data file once it is loaded; null until then, and for segmented ledgers.
+     */
+    private static volatile LedgerTailer tailer;
+
+    /**
+     * File rows already in {@code ledger}; the loader puts every parsed chunk right behind
+     * them, in front of rows entered while it runs. Guarded by the {@code ledger} lock and
+     * only changed by the loader thread.
+     */
+    private static int loadedFileRows;
+
+    /**
+     * Archive file being browsed in streaming mode, or null for the normal in-memory ledger.
+     * Only touched by the menu thread.
+     */
+    private static Path archiveFile;
+
+    /**
+     * Format of a new data file: "text", or "wal" for checksummed records (see {@link WriteAheadLog}).
+     */
+    private static final String NEW_FILE_FORMAT = System.getProperty("tracker.format", "text");
+
+    /**
+     * Group-commit settings for appends: how long a batch stays open for more records
+     * (-Dtracker.appendWindowMillis) and when written records are forced to disk
+     * (-Dtracker.durability=record | records:N | millis:N).
+     */
+    private static final long APPEND_WINDOW_MILLIS = Long.getLong("tracker.appendWindowMillis", 2);
+    private static final String DURABILITY_POLICY = System.getProperty("tracker.durability", "record");
+
+    /**
+     * Long-lived append channel for the data file, opened at startup and closed on exit.
+     */
+    private static TransactionAppender appender;
+
+    /**
+     * Per-month storage (see {@link SegmentedLedger}), used instead of {@link #FILE_NAME}
+     * when this directory holds a manifest; "split <source> <directory>" creates one.
+     * {@code segments} stays null in single-file mode.
+     */
+    private static final String SEGMENT_DIRECTORY = "transactions";
+    private static SegmentedLedger segments;
+
+    /**
+     * One appender per segment that has been written to this session. Guarded by itself.
+     */
+    private static final HashMap<Path, TransactionAppender> segmentAppenders = new HashMap<>();
+
     /* ------------------------------------------------------------------
        Main menu loop
        ------------------------------------------------------------------ */
     public static void main(String[] args) {
 
-        loadTransactions(FILE_NAME);                          // read existing data
+        // "compress <source> <target>" writes a block-compressed copy of a data file and exits.
+        if (args.length == 3 && args[0].equalsIgnoreCase("compress")) {
+            compressDataFile(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+        // "wal <source> <target>" writes a checksummed copy of a data file and exits.
+        if (args.length == 3 && args[0].equalsIgnoreCase("wal")) {
+            convertToLog(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+
+        // "compact <file or segment directory>" sorts and de-duplicates the data offline and exits.
+        if (args.length == 2 && args[0].equalsIgnoreCase("compact")) {
+            compactData(Path.of(args[1]));
+            return;
+        }
+        // "split <source> <directory>" copies a data file into monthly segments and exits.
+        if (args.length == 3 && args[0].equalsIgnoreCase("split")) {
+            splitDataFile(Path.of(args[1]), Path.of(args[2]));
+            return;
+        }
+
+        // "bench-append [rows] [batch]" compares the append paths' throughput and exits.
+        if (args.length >= 1 && args[0].equalsIgnoreCase("bench-append")) {
+            try {
+                AppendBenchmark.run(args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000,
+                        args.length > 2 ? Integer.parseInt(args[2]) : 64);
+            } catch (IOException | NumberFormatException failure) {
+                System.out.println("Benchmark failed: " + failure.getMessage());
+            }
+            return;
+        }
+
+        // read existing data in the background
+        if (SegmentedLedger.isSegmented(Path.of(SEGMENT_DIRECTORY))) {
+            startLoadingSegments(Path.of(SEGMENT_DIRECTORY));
+        } else {
+            startLoadingTransactions(FILE_NAME);
+        }
 
         Scanner scanner = new Scanner(System.in);
         boolean keepRunning = true;
@@ -48,10 +198,14 @@ public class FinancialTracker {
         while (keepRunning) {
             System.out.println();
             System.out.println("Welcome to TransactionApp");
+            if (!ledgerLoaded.isDone()) System.out.println("(transactions " + loadingStatus() + ")");
             System.out.println("Choose an option:");
             System.out.println(" D) Add Deposit");
             System.out.println(" P) Make Payment (Debit)");
+            System.out.println(" T) Transfer Between Categories");
             System.out.println(" L) Ledger");
+            System.out.println(" I) Import File");
+            System.out.println(" S) Search Archive File");
             System.out.println(" X) Exit");
             System.out.print("Your choice: ");
 
@@ -60,12 +214,16 @@ public class FinancialTracker {
             switch (menuChoice) {
                 case "D" -> addDeposit(scanner);
                 case "P" -> addPayment(scanner);
+                case "T" -> addTransfer(scanner);
                 case "L" -> ledgerMenu(scanner);
+                case "I" -> importFile(scanner);
+                case "S" -> archiveMenu(scanner);
                 case "X" -> keepRunning = false;
                 default -> System.out.println("Invalid option – please try again.");
             }
         }
         scanner.close();
+        closeAppender();
     }
 
     /* ------------------------------------------------------------------
@@ -73,37 +231,296 @@ public class FinancialTracker {
        ------------------------------------------------------------------ */
 
     /**
-     * Reads the pipe-delimited data file and fills {@code transactionList}.
-     * If the file is not present, an empty file is created so later writes succeed.
+     * Creates the data file if needed, then loads it on a background thread so the
+     * menu is usable straight away. Only the bytes present right now are loaded –
+     * anything saved while loading is appended after them and is already in memory.
      */
-    private static void loadTransactions(String fileName) {
+    private static void startLoadingTransactions(String fileName) {
         try {
             // Ensure the file exists – create a blank one if needed.
             File dataFile = new File(fileName);
             if (dataFile.createNewFile()) {
+                if (NEW_FILE_FORMAT.equalsIgnoreCase("wal")) WriteAheadLog.create(dataFile.toPath());
                 System.out.println("Created new data file: " + fileName);
             }
+            recoverTornTail(dataFile.toPath());
+            bytesToLoad = CompressedLedger.isCompressed(dataFile.toPath()) || WriteAheadLog.isLog(dataFile.toPath())
+                    ? dataFile.length()
+                    : CommitMarker.committedEnd(dataFile.toPath(), 0, dataFile.length());
+            appender = openAppender(dataFile.toPath());
+
+            Thread loader = new Thread(() -> {
+                try {
+                    loadTransactions(dataFile.toPath(), bytesToLoad);
+                } catch (RuntimeException badData) {
+                    System.out.println("Error reading data file: " + badData.getMessage());
+                } finally {
+                    ledgerLoaded.complete(null);
+                }
+            }, "ledger-loader");
+            loader.setDaemon(true);
+            loader.start();
+        } catch (IOException ioException) {
+            System.out.println("Error reading data file: " + ioException.getMessage());
+            ledgerLoaded.complete(null);
+        }
+    }
+
+    /**
+     * Puts one parsed chunk of file rows (in file order, on the loader thread) behind the
+     * file rows already in {@code ledger}. The first {@code sortedFileRows} file rows are
+     * in timestamp order.
+     */
+    private static void storeLoadedRows(List<Transaction> rows, long sortedFileRows) {
+        synchronized (ledger) {
+            ledger.insert(loadedFileRows, rows, (int) Math.min(sortedFileRows, loadedFileRows + rows.size()));
+            int enteredRows = ledger.size() - loadedFileRows - rows.size();    // entered while loading
+            duplicateGuard.moved(ledger, ledger.size() - enteredRows, enteredRows, rows.size());
+            duplicateGuard.addAll(rows, loadedFileRows);
+            loadedFileRows += rows.size();
+        }
+    }
+
+    /**
+     * A crash mid-write leaves a torn last record or batch – cut it off before anything is appended.
+     */
+    private static void recoverTornTail(Path dataPath) throws IOException {
+        long tornBytes;
+        String torn;
+        if (WriteAheadLog.isLog(dataPath)) {
+            tornBytes = WriteAheadLog.recover(dataPath);
+            torn = "a torn record";
+        } else if (CompressedLedger.isCompressed(dataPath)) {
+            tornBytes = CompressedLedger.recover(dataPath);
+            torn = "a torn gzip member";
+        } else {
+            tornBytes = CommitMarker.recover(dataPath);
+            torn = "an incomplete batch";
+        }
+        if (tornBytes > 0) System.out.println("Removed " + torn + " (" + tornBytes + " bytes) from the end of " + dataPath);
+    }
 
-            BufferedReader reader = new BufferedReader(new FileReader(dataFile));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] fields = line.split("\\|");             // 5 parts expected
-                LocalDate date = LocalDate.parse(fields[0], DATE_FORMATTER);
-                LocalTime time = LocalTime.parse(fields[1], TIME_FORMATTER);
-                String description = fields[2];
-                String vendor = fields[3];
-                double amount = Double.parseDouble(fields[4]);
-
-                Transaction transaction =
-                        new Transaction(date, time, description, vendor, amount);
-                transactionList.add(transaction);
+    /**
+     * Segmented counterpart of {@link #startLoadingTransactions}: remembers how long every
+     * segment is right now, then loads them oldest month first on a background thread.
+     * Segments are not tailed and have no snapshot – each one is small.
+     */
+    private static void startLoadingSegments(Path directory) {
+        try {
+            segments = SegmentedLedger.open(directory);
+            List<Path> segmentFiles = segments.allSegments();
+            long[] segmentSizes = new long[segmentFiles.size()];
+            long totalBytes = 0;
+            for (int i = 0; i < segmentSizes.length; i++) {
+                recoverTornTail(segmentFiles.get(i));
+                segmentSizes[i] = Files.size(segmentFiles.get(i));
+                totalBytes += segmentSizes[i];
             }
-            reader.close();
+            bytesToLoad = totalBytes;
+
+            Thread loader = new Thread(() -> {
+                try {
+                    loadSegments(segmentFiles, segmentSizes);
+                } catch (RuntimeException badData) {
+                    System.out.println("Error reading data file: " + badData.getMessage());
+                } finally {
+                    ledgerLoaded.complete(null);
+                }
+            }, "ledger-loader");
+            loader.setDaemon(true);
+            loader.start();
+        } catch (IOException ioException) {
+            System.out.println("Error reading segment directory: " + ioException.getMessage());
+            ledgerLoaded.complete(null);
+        }
+    }
+
+    /**
+     * Loads the first {@code segmentSizes[i]} bytes of every segment and puts the rows in
+     * front of anything already in {@code ledger}, one parsed chunk at a time.
+     */
+    private static void loadSegments(List<Path> segmentFiles, long[] segmentSizes) {
+        ArrayList<TransactionLoader.RejectedRow> rejected = new ArrayList<>();
+        long sortedRows = 0;                // months are in order, so sorted segments chain up
+        boolean allSortedSoFar = true;
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            Path segment = segmentFiles.get(i);
+            long sortedLimit = allSortedSoFar ? loadedFileRows + LedgerCompactor.sortedRows(segment) : sortedRows;
+            try {
+                TransactionLoader.LoadedRange range = TransactionLoader.load(segment, 0, segmentSizes[i], 0,
+                        valuePool, bytesLoaded, rows -> storeLoadedRows(rows, sortedLimit));
+                for (TransactionLoader.RejectedRow row : range.rejected()) {
+                    rejected.add(new TransactionLoader.RejectedRow(
+                            row.lineNumber(), segment.getFileName() + ": " + row.reason(), row.text()));
+                }
+            } catch (IOException ioException) {
+                System.out.println("Error reading " + segment + ": " + ioException.getMessage());
+                allSortedSoFar = false;
+            }
+            sortedRows = Math.min(sortedLimit, loadedFileRows);
+            allSortedSoFar &= sortedLimit >= loadedFileRows;
+        }
+
+        if (!rejected.isEmpty()) {
+            quarantineRows(rejected);
+            System.out.println("Loaded " + loadedFileRows + " transactions; "
+                    + rejected.size() + " bad rows written to " + QUARANTINE_FILE_NAME);
+        }
+    }
+
+    /**
+     * Reads the first {@code endOffset} bytes of the pipe-delimited data file and puts
+     * those rows in front of anything already in {@code ledger}, one parsed chunk at a
+     * time, so the whole file is never held as Transactions at once.
+     * <p>
+     * When a binary snapshot of an earlier run is available only the lines appended
+     * after it are parsed; the rest are parsed in parallel by {@link TransactionLoader}.
+     * A new snapshot is written in the background once that text tail grows large.
+     * Malformed rows never stop the load – they are moved to the quarantine file.
+     */
+    private static void loadTransactions(Path dataPath, long endOffset) {
+        try {
+            // File rows come before deposits/payments entered while we were loading.
+            // A compacted file's sorted part never has to be sorted again.
+            long sortedFileRows = LedgerCompactor.sortedRows(dataPath);
+            Consumer<List<Transaction>> store = rows -> storeLoadedRows(rows, sortedFileRows);
+
+            LedgerSnapshot.Contents snapshot;
+            try {
+                snapshot = LedgerSnapshot.read(dataPath, valuePool, store);
+            } catch (IOException damaged) {
+                // Part of it is in the ledger already – take that out and parse the whole file.
+                System.out.println("Ignoring unreadable snapshot: " + damaged.getMessage());
+                synchronized (ledger) {
+                    ledger.removeFirst(loadedFileRows);
+                    loadedFileRows = 0;
+                    duplicateGuard.rebuild(ledger);
+                }
+                snapshot = null;
+            }
+            long snapshotOffset = snapshot == null ? 0 : snapshot.csvOffset();
+            long snapshotLines = snapshot == null ? 0 : snapshot.csvLines();
+            bytesLoaded.addAndGet(snapshotOffset);
+            TransactionLoader.LoadedRange tail = TransactionLoader.load(
+                    dataPath, snapshotOffset, endOffset, snapshotLines, valuePool, bytesLoaded, store);
+
+            // Replaying a long text tail is what the snapshot is meant to avoid – refresh it.
+            if (tail.endOffset() - snapshotOffset >= LedgerSnapshot.REBUILD_TAIL_BYTES) {
+                LedgerSnapshot.writeInBackground(dataPath, ledger, loadedFileRows, tail.endOffset(), tail.endLine());
+            }
+
+            if (!tail.rejected().isEmpty()) {
+                quarantineRows(tail.rejected());
+                System.out.println("Loaded " + loadedFileRows + " transactions; "
+                        + tail.rejected().size() + " bad rows written to " + QUARANTINE_FILE_NAME);
+            }
+
+            // From now on pick up rows other programs append, starting where the load stopped.
+            LedgerTailer started = new LedgerTailer(dataPath, tail.endOffset(), tail.endLine(), valuePool,
+                    FinancialTracker::ingestAppendedRows);
+            started.start();
+            tailer = started;
         } catch (IOException ioException) {
             System.out.println("Error reading data file: " + ioException.getMessage());
         }
     }
 
+    /**
+     * Called on the tailer thread with rows appended to the data file since the last call.
+     * Rows this program wrote itself are already in memory and are skipped.
+     */
+    private static void ingestAppendedRows(TransactionLoader.LoadedRange appended) {
+        synchronized (ledger) {
+            long pass = ++tailerPasses;
+            ArrayList<Transaction> foreignRows = new ArrayList<>(appended.transactions().size());
+            for (Transaction transaction : appended.transactions()) {
+                // Concurrent saves may reach the file in a different order than they were marked.
+                if (!ownAppendedRows.isEmpty() && removeOwnAppendedRow(transaction)) continue;
+                foreignRows.add(transaction);
+            }
+            // The pass after a write completed may have read the file just before it, but
+            // the one after that started later – an own row it did not bring is not coming.
+            ownAppendedRows.removeIf(own -> own.writtenInPass >= 0 && own.writtenInPass <= pass - 2);
+            duplicateGuard.addAll(foreignRows, ledger.size());
+            ledger.addAll(foreignRows);
+        }
+        if (!appended.rejected().isEmpty()) quarantineRows(appended.rejected());
+    }
+
+    /**
+     * Takes the oldest own row with the same stored line as {@code transaction} off
+     * {@code ownAppendedRows}; false if there is none. Caller holds the ledger lock.
+     */
+    private static boolean removeOwnAppendedRow(Transaction transaction) {
+        for (Iterator<OwnRow> own = ownAppendedRows.iterator(); own.hasNext(); ) {
+            Transaction row = own.next().row;
+            if (row.getSortKey() == transaction.getSortKey()
+                    && row.getAmountCents() == transaction.getAmountCents()
+                    && row.getDescription().equals(transaction.getDescription())
+                    && row.getVendor().equals(transaction.getVendor())) {
+                own.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An entry of {@code ownAppendedRows}: the row, and the tailer pass during which its
+     * write completed (-1 while it is still being written).
+     */
+    private static final class OwnRow {
+        final Transaction row;
+        long writtenInPass = -1;
+
+        OwnRow(Transaction row) {
+            this.row = row;
+        }
+    }
+
+    /**
+     * Appends rejected rows to the quarantine file as "line|reason|original text".
+     */
+    private static void quarantineRows(List<TransactionLoader.RejectedRow> rejectedRows) {
+        try (BufferedWriter writer =
+                     new BufferedWriter(new FileWriter(QUARANTINE_FILE_NAME, true))) {
+
+            for (TransactionLoader.RejectedRow row : rejectedRows) {
+                writer.write(row.lineNumber() + "|" + row.reason() + "|" + row.text());
+                writer.newLine();
+            }
+
+        } catch (IOException ioException) {
+            System.out.println("Failed to write quarantine file: " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * "loading 42%" while the background load runs, or an empty string once it is done.
+     */
+    private static String loadingStatus() {
+        if (ledgerLoaded.isDone()) return "";
+        long percent = bytesToLoad == 0 ? 100 : Math.min(99, bytesLoaded.get() * 100 / bytesToLoad);
+        return "loading " + percent + "%";
+    }
+
+    /**
+     * Blocks until the background load is finished, printing its progress meanwhile.
+     * Called by every view that reads {@code ledger}.
+     */
+    private static void awaitTransactionsLoaded() {
+        while (!ledgerLoaded.isDone()) {
+            System.out.println("Transactions are still " + loadingStatus() + " – please wait…");
+            try {
+                ledgerLoaded.get(500, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException stillLoading) {
+                // print progress again
+            } catch (InterruptedException | ExecutionException unexpected) {
+                return;
+            }
+        }
+    }
+
     /* ------------------------------------------------------------------
        Add new transactions
        ------------------------------------------------------------------ */
@@ -123,16 +540,19 @@ public class FinancialTracker {
         System.out.print("Vendor: ");
         String vendor = scanner.nextLine();
 
-        double amount = promptPositiveAmount(scanner);
-        if (Double.isNaN(amount)) return;              // invalid amount entered
+        long amountCents = promptPositiveAmount(scanner);
+        if (amountCents == 0) return;                  // invalid amount entered
 
         Transaction deposit = new Transaction(
                 dateTime.toLocalDate(),
                 dateTime.toLocalTime(),
                 description,
                 vendor,
-                amount);                               // positive number
-        saveTransaction(deposit);
+                amountCents);                          // positive number
+        if (saveTransaction(deposit).saved() == 0) {
+            System.out.println("The ledger already has this exact deposit – not recorded again.");
+            return;
+        }
         System.out.println("Deposit recorded.");
     }
 
@@ -150,19 +570,60 @@ public class FinancialTracker {
         System.out.print("Vendor: ");
         String vendor = scanner.nextLine();
 
-        double amount = promptPositiveAmount(scanner);
-        if (Double.isNaN(amount)) return;
+        long amountCents = promptPositiveAmount(scanner);
+        if (amountCents == 0) return;
 
         Transaction payment = new Transaction(
                 dateTime.toLocalDate(),
                 dateTime.toLocalTime(),
                 description,
                 vendor,
-                -amount);                              // convert to negative
-        saveTransaction(payment);
+                -amountCents);                         // convert to negative
+        if (saveTransaction(payment).saved() == 0) {
+            System.out.println("The ledger already has this exact payment – not recorded again.");
+            return;
+        }
         System.out.println("Payment recorded.");
     }
 
+    /**
+     * Moves money from one category to another: a payment out of the first and a
+     * deposit into the second, saved as one atomic batch so neither half can go missing.
+     */
+    private static void addTransfer(Scanner scanner) {
+
+        LocalDateTime dateTime = promptDateTime(scanner);
+        if (dateTime == null) return;
+
+        System.out.print("From category: ");
+        String fromCategory = scanner.nextLine();
+
+        System.out.print("To category: ");
+        String toCategory = scanner.nextLine();
+
+        long amountCents = promptPositiveAmount(scanner);
+        if (amountCents == 0) return;
+
+        Transaction payment = new Transaction(
+                dateTime.toLocalDate(),
+                dateTime.toLocalTime(),
+                "Transfer to " + toCategory,
+                fromCategory,
+                -amountCents);
+        Transaction deposit = new Transaction(
+                dateTime.toLocalDate(),
+                dateTime.toLocalTime(),
+                "Transfer from " + fromCategory,
+                toCategory,
+                amountCents);
+        SaveResult result = commitTransactions(List.of(payment, deposit));
+        if (result.duplicates() > 0) {
+            System.out.println("The ledger already has this transfer – not recorded again.");
+        } else if (result.saved() > 0) {
+            System.out.println("Transfer recorded.");
+        }
+    }
+
     /* ------------- small input helpers (used by both addDeposit and addPayment) ------------- */
 
     /**
@@ -180,45 +641,314 @@ public class FinancialTracker {
     }
 
     /**
-     * Prompt for a positive number. Returns NaN if the user enters invalid data.
+     * Prompt for a positive amount and return it in whole cents (rounded half-up).
+     * Returns 0 if the user enters invalid data or less than a cent.
      */
-    private static double promptPositiveAmount(Scanner scanner) {
+    private static long promptPositiveAmount(Scanner scanner) {
         System.out.print("Amount (positive): ");
         String userInput = scanner.nextLine().trim();
         try {
-            double amount = Double.parseDouble(userInput);
-            if (amount <= 0) throw new NumberFormatException();
-            return amount;
+            long amountCents = FieldDecoder.parseCents(userInput);
+            if (amountCents <= 0) throw new NumberFormatException();
+            return amountCents;
         } catch (NumberFormatException badNumber) {
             System.out.println("Amount must be a positive number.");
-            return Double.NaN;
+            return 0;
         }
     }
 
     /* ------------------------------------------------------------------
        Persist a new Transaction (to list + file)
        ------------------------------------------------------------------ */
-    private static void saveTransaction(Transaction transaction) {
 
-        // Add to in-memory list
-        transactionList.add(transaction);
+    /**
+     * Outcome of a save: rows stored, exact duplicates refused, and a future that
+     * completes once the stored rows are on disk (the caller does not have to wait,
+     * except for an atomic batch, which is already written).
+     */
+    private record SaveResult(int saved, int duplicates, CompletableFuture<Void> durable) {
+    }
 
-        // Append to file
-        String recordLine = "%s|%s|%s|%s|%.2f".formatted(
-                transaction.getDate().format(DATE_FORMATTER),
-                transaction.getTime().format(TIME_FORMATTER),
-                transaction.getDescription(),
-                transaction.getVendor(),
-                transaction.getAmount());
+    /**
+     * Adds the transaction to the list and queues it for the data file – unless the
+     * ledger already holds exactly the same row.
+     */
+    private static SaveResult saveTransaction(Transaction transaction) {
+        return saveTransactions(List.of(transaction));
+    }
 
-        try (BufferedWriter writer =
-                     new BufferedWriter(new FileWriter(FILE_NAME, true))) {
+    /**
+     * Bulk version of {@link #saveTransaction}: drops exact duplicates, grows the list
+     * once, then encodes every row into one buffer that reaches the file with a single write.
+     */
+    private static SaveResult saveTransactions(Collection<Transaction> candidates) {
+        return storeTransactions(candidates, false);
+    }
+
+    /**
+     * Saves rows that belong together (e.g. both sides of a transfer) as one atomic batch:
+     * after a crash the data file holds all of them or none. If any row is already in
+     * the ledger, none is saved. Unlike the other saves this waits for the write, so
+     * {@code saved} is 0 when the batch did not reach the file.
+     */
+    private static SaveResult commitTransactions(List<Transaction> batch) {
+        return storeTransactions(batch, true);
+    }
+
+    /**
+     * Shared body of {@link #saveTransactions} and {@link #commitTransactions}.
+     */
+    private static SaveResult storeTransactions(Collection<Transaction> candidates, boolean atomic) {
+
+        // The background loader and the tailer also touch the list – mark the rows as
+        // ours before they are written so the tailer cannot mistake them for foreign rows.
+        LedgerTailer following = tailer;
+        boolean tailed = segments == null && (following == null ? !ledgerLoaded.isDone() : following.isRunning());
+        List<Transaction> transactions;
+        ArrayList<OwnRow> ownRows = new ArrayList<>();
+        synchronized (ledger) {
+            transactions = duplicateGuard.withoutDuplicates(candidates, ledger);
+            if (atomic && transactions.size() < candidates.size()) {
+                return new SaveResult(0, candidates.size(), CompletableFuture.completedFuture(null));
+            }
+            duplicateGuard.stored(transactions, ledger.size());
+            ledger.addAll(transactions);
+            if (tailed) {
+                for (Transaction transaction : transactions) ownRows.add(new OwnRow(transaction));
+                ownAppendedRows.addAll(ownRows);
+            }
+        }
+        int duplicates = candidates.size() - transactions.size();
+
+        // Append to file on the writer thread(s) – as plain text, inside a compressed block,
+        // or as checksummed records, matching the file. Segmented ledgers write each row
+        // to the segment of its month; an atomic batch must fit in one of them.
+        CompletableFuture<Void> durable;
+        try {
+            if (atomic) {
+                TransactionAppender batchAppender = appenderFor(transactions.get(0));
+                for (Transaction transaction : transactions) {
+                    if (appenderFor(transaction) != batchAppender) {
+                        throw new IOException("An atomic batch cannot span more than one month of a segmented ledger");
+                    }
+                }
+                durable = batchAppender.submitBatch(transactions);
+            } else {
+                durable = submitByFile(transactions);
+            }
+        } catch (IOException ioException) {
+            durable = CompletableFuture.failedFuture(ioException);
+        }
+
+        durable = durable.whenComplete((written, failure) -> {
+            if (failure == null) {
+                synchronized (ledger) {
+                    for (OwnRow own : ownRows) own.writtenInPass = tailerPasses;
+                }
+                return;
+            }
+            synchronized (ledger) {
+                for (int i = ownRows.size() - 1; i >= 0; i--) {          // nothing reached the file
+                    ownAppendedRows.removeLastOccurrence(ownRows.get(i));
+                }
+                // A batch that is not in the file must not be visible in memory either.
+                if (atomic) {
+                    for (int i = transactions.size() - 1; i >= 0; i--) {
+                        int row = ledger.removeLast(transactions.get(i));
+                        if (row >= 0) duplicateGuard.removed(ledger, transactions.get(i), row);
+                    }
+                }
+            }
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            System.out.println("Failed to write to file: " + cause.getMessage());
+        });
+
+        // Whether an atomic batch was saved is only known once it is written.
+        if (atomic) {
+            try {
+                durable.join();
+            } catch (CompletionException | CancellationException notWritten) {
+                return new SaveResult(0, duplicates, durable);
+            }
+        }
+        return new SaveResult(transactions.size(), duplicates, durable);
+    }
+
+    /**
+     * Hands each row to the appender of its file; one submission per file.
+     */
+    private static CompletableFuture<Void> submitByFile(List<Transaction> transactions) throws IOException {
+        LinkedHashMap<TransactionAppender, List<Transaction>> rowsByFile = new LinkedHashMap<>();
+        for (Transaction transaction : transactions) {
+            rowsByFile.computeIfAbsent(appenderFor(transaction), file -> new ArrayList<>()).add(transaction);
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        rowsByFile.forEach((fileAppender, fileRows) -> writes.add(fileAppender.submitAll(fileRows)));
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Appender of the file {@code transaction} belongs in – the data file, or in
+     * segmented mode the segment of its month (opened the first time it is needed).
+     */
+    private static TransactionAppender appenderFor(Transaction transaction) throws IOException {
+        if (segments == null) {
+            if (appender == null) throw new IOException("Data file is not open for writing");
+            return appender;
+        }
+        Path segment = segments.segmentFor(transaction.getDate());
+        synchronized (segmentAppenders) {
+            TransactionAppender segmentAppender = segmentAppenders.get(segment);
+            if (segmentAppender == null) {
+                segmentAppender = openAppender(segment);
+                if (segmentAppender == null) throw new IOException("Segment " + segment + " is not open for writing");
+                segmentAppenders.put(segment, segmentAppender);
+            }
+            return segmentAppender;
+        }
+    }
+
+    /**
+     * Opens the appender (and its writer thread) for the data file, or returns null (and says why)
+     * if the durability setting is invalid or the file cannot be opened.
+     */
+    private static TransactionAppender openAppender(Path dataPath) {
+        try {
+            TransactionAppender.Durability durability = TransactionAppender.Durability.parse(DURABILITY_POLICY);
+            return new TransactionAppender(dataPath, CompressedLedger.isCompressed(dataPath),
+                    WriteAheadLog.isLog(dataPath), APPEND_WINDOW_MILLIS, durability);
+        } catch (IllegalArgumentException badSetting) {
+            System.out.println(badSetting.getMessage() + " – use record, records:N or millis:N");
+        } catch (IOException ioException) {
+            System.out.println("Cannot open data file for writing: " + ioException.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Lets the writer threads finish everything still queued, then closes the data file(s).
+     */
+    private static void closeAppender() {
+        ArrayList<TransactionAppender> appenders = new ArrayList<>();
+        if (appender != null) appenders.add(appender);
+        synchronized (segmentAppenders) {
+            appenders.addAll(segmentAppenders.values());
+        }
+
+        int pending = 0;
+        for (TransactionAppender openAppender : appenders) pending += openAppender.pendingWrites();
+        if (pending > 0) System.out.println("Saving " + pending + " pending writes…");
+        for (TransactionAppender openAppender : appenders) {
+            try {
+                openAppender.close();
+            } catch (IOException ioException) {
+                System.out.println("Failed to close data file: " + ioException.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits until every segment write queued so far has reached its file, so that
+     * queries reading the segment files see this session's rows.
+     */
+    private static void awaitSegmentWrites() {
+        ArrayList<TransactionAppender> appenders;
+        synchronized (segmentAppenders) {
+            appenders = new ArrayList<>(segmentAppenders.values());
+        }
+        try {
+            for (TransactionAppender segmentAppender : appenders) segmentAppender.awaitWritten();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds every row of a pipe-delimited file (e.g. the nightly bank export) to the
+     * ledger in one bulk append. Malformed rows are skipped and counted.
+     */
+    private static void importFile(Scanner scanner) {
+        System.out.print("File to import: ");
+        Path importPath = Path.of(scanner.nextLine().trim());
+        if (!Files.isRegularFile(importPath)) {
+            System.out.println("No such file: " + importPath);
+            return;
+        }
+
+        try {
+            TransactionLoader.LoadedRange imported = TransactionLoader.load(
+                    importPath, 0, Long.MAX_VALUE, 0, valuePool, new AtomicLong());
+            awaitTransactionsLoaded();                 // duplicates are only caught against loaded rows
+            SaveResult result = saveTransactions(imported.transactions());
+            System.out.println("Imported " + result.saved() + " transactions"
+                    + (result.duplicates() == 0 ? "" : "; skipped " + result.duplicates() + " already in the ledger")
+                    + (imported.rejected().isEmpty() ? "." : "; skipped " + imported.rejected().size() + " malformed rows."));
+        } catch (IOException ioException) {
+            System.out.println("Failed to read " + importPath + ": " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Writes a compressed copy of {@code source} whose blocks can be loaded in parallel.
+     */
+    private static void compressDataFile(Path source, Path target) {
+        try {
+            CompressedLedger.compress(source, target);
+            System.out.println("Wrote " + target + " (" + Files.size(target) + " bytes)");
+        } catch (IOException ioException) {
+            System.out.println("Failed to compress " + source + ": " + ioException.getMessage());
+        }
+    }
 
-            writer.write(recordLine);
-            writer.newLine();
+    /**
+     * Compacts a data file, or every segment of a segmented ledger, in place.
+     */
+    private static void compactData(Path target) {
+        try {
+            List<Path> files = SegmentedLedger.isSegmented(target)
+                    ? SegmentedLedger.open(target).allSegments()
+                    : List.of(target);
+            long rows = 0;
+            long duplicates = 0;
+            long rejected = 0;
+            for (Path file : files) {
+                LedgerCompactor.Summary summary = LedgerCompactor.compact(
+                        file, file.resolveSibling(file.getFileName() + ".quarantine"));
+                rows += summary.rows();
+                duplicates += summary.duplicates();
+                rejected += summary.rejected();
+            }
+            System.out.println("Compacted " + target + ": " + rows + " rows in timestamp order, "
+                    + duplicates + " duplicates removed"
+                    + (rejected == 0 ? "" : ", " + rejected + " malformed rows quarantined"));
+        } catch (IOException ioException) {
+            System.out.println("Failed to compact " + target + ": " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Copies {@code source} into monthly segment files plus a manifest under {@code directory}.
+     */
+    private static void splitDataFile(Path source, Path directory) {
+        try {
+            SegmentedLedger.SplitSummary summary = SegmentedLedger.split(source, directory);
+            System.out.println("Wrote " + summary.rows() + " rows into " + summary.segments()
+                    + " monthly segments under " + directory
+                    + (summary.skipped() == 0 ? "" : " (skipped " + summary.skipped() + " malformed rows)"));
+        } catch (IOException ioException) {
+            System.out.println("Failed to split " + source + ": " + ioException.getMessage());
+        }
+    }
 
+    /**
+     * Writes a checksummed copy of {@code source}; torn tails of it are repaired on load.
+     */
+    private static void convertToLog(Path source, Path target) {
+        try {
+            WriteAheadLog.convert(source, target);
+            System.out.println("Wrote " + target + " (" + Files.size(target) + " bytes)");
         } catch (IOException ioException) {
-            System.out.println("Failed to write to file: " + ioException.getMessage());
+            System.out.println("Failed to convert " + source + ": " + ioException.getMessage());
         }
     }
 
@@ -227,10 +957,13 @@ public class FinancialTracker {
        ------------------------------------------------------------------ */
     private static void ledgerMenu(Scanner scanner) {
 
+        // Every view below reads the full list – except period reports on a segmented ledger.
+        if (archiveFile == null && segments == null) awaitTransactionsLoaded();
+
         boolean inLedgerMenu = true;
         while (inLedgerMenu) {
             System.out.println();
-            System.out.println("Ledger Menu");
+            System.out.println(archiveFile == null ? "Ledger Menu" : "Ledger Menu – archive " + archiveFile);
             System.out.println(" A) All Transactions");
             System.out.println(" D) Deposits Only");
             System.out.println(" P) Payments Only");
@@ -251,6 +984,26 @@ public class FinancialTracker {
         }
     }
 
+    /**
+     * Opens the ledger menu over an archive file that may be larger than the heap.
+     * Every view streams the file in one bounded-memory pass (see {@link StreamingQuery}).
+     */
+    private static void archiveMenu(Scanner scanner) {
+        System.out.print("Archive file: ");
+        Path archivePath = Path.of(scanner.nextLine().trim());
+        if (!Files.isRegularFile(archivePath)) {
+            System.out.println("No such file: " + archivePath);
+            return;
+        }
+
+        archiveFile = archivePath;
+        try {
+            ledgerMenu(scanner);
+        } finally {
+            archiveFile = null;
+        }
+    }
+
     /* ---------- Pretty printing helpers ---------- */
 
     private static void printTableHeader() {
@@ -260,58 +1013,153 @@ public class FinancialTracker {
     }
 
     private static void printTransactionRow(Transaction transaction) {
-        System.out.printf("%-12s %-10s %-24s %-18s %10.2f%n",
-                transaction.getDate().format(DATE_FORMATTER),
-                transaction.getTime().format(TIME_FORMATTER),
-                transaction.getDescription(),
-                transaction.getVendor(),
-                transaction.getAmount());
+        printRow(transaction.getDate(), transaction.getTime(), transaction.getDescription(),
+                transaction.getVendor(), transaction.getAmountCents());
+    }
+
+    private static void printLedgerRow(LedgerColumns rows, int row) {
+        long sortKey = rows.sortKey(row);
+        printRow(Transaction.dateOf(sortKey), Transaction.timeOf(sortKey),
+                rows.description(row), rows.vendor(row), rows.cents(row));
+    }
+
+    private static void printRow(LocalDate date, LocalTime time, String description, String vendor, long amountCents) {
+        System.out.printf("%-12s %-10s %-24s %-18s %10s%n",
+                date.format(DATE_FORMATTER),
+                time.format(TIME_FORMATTER),
+                description,
+                vendor,
+                RecordEncoder.amount(amountCents));
+    }
+
+    /**
+     * Row count and deposit / payment sums (in cents) of what a view printed.
+     */
+    private static final class ReportTotals {
+        long rows;
+        long depositCents;
+        long paymentCents;
+
+        void add(long amountCents) {
+            rows++;
+            if (amountCents > 0) {
+                depositCents += amountCents;
+            } else {
+                paymentCents += amountCents;
+            }
+        }
     }
 
     /**
-     * Helper Method – returns a copy of transactionList sorted by date/time
+     * Prints the deposit, payment and net sums under a report.
      */
-    private static ArrayList<Transaction> getTransactionsSortedNewestFirst() {
+    private static void printTotals(ReportTotals totals) {
+        System.out.println("--------------------------------------------------------------------------");
+        System.out.printf("%-64s %13s%n", "Deposits", RecordEncoder.amount(totals.depositCents));
+        System.out.printf("%-64s %13s%n", "Payments", RecordEncoder.amount(totals.paymentCents));
+        System.out.printf("%-64s %13s%n", "Net", RecordEncoder.amount(totals.depositCents + totals.paymentCents));
+    }
 
-        // Copy list so original order is untouched
-        ArrayList<Transaction> sortedList = new ArrayList<>(transactionList);
+    /**
+     * Helper Method – returns a copy of the ledger rows matching {@code query}, taken under
+     * the ledger lock because the tailer thread may be appending rows at the same time
+     */
+    private static LedgerColumns selectRows(LedgerQuery query) {
+        synchronized (ledger) {
+            return ledger.select(query);
+        }
+    }
 
-        /* Comparator:
-           • Later date should come first (newest)
-           • If same date, later time comes first
-         */
-        Collections.sort(sortedList, (first, second) -> {
-            int dateCompare = second.getDate().compareTo(first.getDate());   // reverse date
-            if (dateCompare != 0) return dateCompare;
-            return second.getTime().compareTo(first.getTime());              // reverse time
+    /**
+     * Prints every matching row, newest first, and returns their totals.
+     * While an archive file is open the rows are streamed from that file instead of memory.
+     */
+    private static ReportTotals printNewestFirst(LedgerQuery query) {
+        ReportTotals totals = new ReportTotals();
+        if (archiveFile != null) {
+            try {
+                StreamingQuery.forEachNewestFirst(archiveFile, query, transaction -> {
+                    printTransactionRow(transaction);
+                    totals.add(transaction.getAmountCents());
+                });
+            } catch (IOException ioException) {
+                System.out.println("Error reading archive file: " + ioException.getMessage());
+            }
+            return totals;
+        }
+        awaitTransactionsLoaded();
+        LedgerColumns matches = selectRows(query);
+        matches.forEachNewestFirst(row -> {
+            printLedgerRow(matches, row);
+            totals.add(matches.cents(row));
         });
+        return totals;
+    }
 
-        return sortedList;
+    /**
+     * Same as {@link #printNewestFirst} but in stored (file) order.
+     */
+    private static ReportTotals printInStoredOrder(LedgerQuery query) {
+        ReportTotals totals = new ReportTotals();
+        if (archiveFile != null) {
+            try {
+                StreamingQuery.forEachInFileOrder(archiveFile, query, transaction -> {
+                    printTransactionRow(transaction);
+                    totals.add(transaction.getAmountCents());
+                });
+            } catch (IOException ioException) {
+                System.out.println("Error reading archive file: " + ioException.getMessage());
+            }
+            return totals;
+        }
+        awaitTransactionsLoaded();
+        LedgerColumns matches = selectRows(query);
+        for (int row = 0; row < matches.size(); row++) {
+            printLedgerRow(matches, row);
+            totals.add(matches.cents(row));
+        }
+        return totals;
     }
 
-    private static void displayLedger() {
-        printTableHeader();
-        for (Transaction transaction : getTransactionsSortedNewestFirst()) {
+    /**
+     * Like {@link #printNewestFirst} for a query with a date range.
+     * On a segmented ledger only the segments of the overlapping months are read,
+     * straight from their files – the rest of the history is never touched.
+     */
+    private static ReportTotals printPeriodNewestFirst(LedgerQuery query) {
+        if (archiveFile != null || segments == null) return printNewestFirst(query);
+
+        awaitSegmentWrites();
+        ArrayList<Transaction> matches = new ArrayList<>();
+        for (Path segment : segments.segmentsOverlapping(query.startDate(), query.endDate())) {
+            try {
+                StreamingQuery.forEachInFileOrder(segment, query, matches::add);
+            } catch (IOException ioException) {
+                System.out.println("Error reading " + segment + ": " + ioException.getMessage());
+            }
+        }
+        matches.sort(Transaction.NEWEST_FIRST);
+        ReportTotals totals = new ReportTotals();
+        for (Transaction transaction : matches) {
             printTransactionRow(transaction);
+            totals.add(transaction.getAmountCents());
         }
+        return totals;
+    }
+
+    private static void displayLedger() {
+        printTableHeader();
+        printNewestFirst(LedgerQuery.ALL);
     }
 
     private static void displayDeposits() {
         printTableHeader();
-        for (Transaction transaction : getTransactionsSortedNewestFirst()) {
-            if (transaction.getAmount() > 0) {
-                printTransactionRow(transaction);
-            }
-        }
+        printNewestFirst(LedgerQuery.ALL.depositsOnly());
     }
 
     private static void displayPayments() {
         printTableHeader();
-        for (Transaction transaction : getTransactionsSortedNewestFirst()) {
-            if (transaction.getAmount() < 0) {
-                printTransactionRow(transaction);
-            }
-        }
+        printNewestFirst(LedgerQuery.ALL.paymentsOnly());
     }
 
     /* ------------------------------------------------------------------
@@ -329,6 +1177,7 @@ public class FinancialTracker {
             System.out.println(" 4) Previous Year");
             System.out.println(" 5) Search by Vendor");
             System.out.println(" 6) Custom Search");
+            System.out.println(" 7) Memory Report");
             System.out.println(" 0) Back");
             System.out.print("Your choice: ");
 
@@ -356,6 +1205,7 @@ public class FinancialTracker {
                     filterByVendor(vendorName);
                 }
                 case "6" -> customSearch(scanner);
+                case "7" -> printMemoryReport();
                 case "0" -> inReportsMenu = false;
                 default -> System.out.println("Invalid option – please try again.");
             }
@@ -369,16 +1219,14 @@ public class FinancialTracker {
      */
     private static void filterByDate(LocalDate startDate, LocalDate endDate) {
         printTableHeader();
-        boolean anyFound = false;
 
-        for (Transaction transaction : getTransactionsSortedNewestFirst()) {
-            LocalDate transactionDate = transaction.getDate();
-            if (!transactionDate.isBefore(startDate) && !transactionDate.isAfter(endDate)) {
-                printTransactionRow(transaction);
-                anyFound = true;
-            }
+        ReportTotals totals = printPeriodNewestFirst(LedgerQuery.ALL.between(startDate, endDate));
+
+        if (totals.rows == 0) {
+            System.out.println("No transactions found for the selected dates.");
+        } else {
+            printTotals(totals);
         }
-        if (!anyFound) System.out.println("No transactions found for the selected dates.");
     }
 
     /**
@@ -386,15 +1234,14 @@ public class FinancialTracker {
      */
     private static void filterByVendor(String vendorName) {
         printTableHeader();
-        boolean anyFound = false;
 
-        for (Transaction transaction : getTransactionsSortedNewestFirst()) {
-            if (transaction.getVendor().equalsIgnoreCase(vendorName)) {
-                printTransactionRow(transaction);
-                anyFound = true;
-            }
+        ReportTotals totals = printNewestFirst(LedgerQuery.ALL.withVendor(vendorName));
+
+        if (totals.rows == 0) {
+            System.out.println("No transactions found for that vendor.");
+        } else {
+            printTotals(totals);
         }
-        if (!anyFound) System.out.println("No transactions found for that vendor.");
     }
 
     /**
@@ -416,29 +1263,45 @@ public class FinancialTracker {
         String vendorFilter = scanner.nextLine().trim();
 
         System.out.print("Amount      (blank = any): ");
-        Double amountFilter = parseDouble(scanner.nextLine().trim());
+        Long amountFilter = parseCents(scanner.nextLine().trim());
 
         printTableHeader();
-        boolean anyFound = false;
 
+        ReportTotals totals = printInStoredOrder(LedgerQuery.ALL.between(startDate, endDate)
+                .withDescription(descriptionFilter)
+                .withVendor(vendorFilter)
+                .withAmount(amountFilter));
 
-        for (Transaction transaction : transactionList) {
-            boolean matches = true;
-
-            if (startDate != null && transaction.getDate().isBefore(startDate)) matches = false;
-            if (endDate != null && transaction.getDate().isAfter(endDate)) matches = false;
-            if (!descriptionFilter.isEmpty()
-                    && !transaction.getDescription().equalsIgnoreCase(descriptionFilter)) matches = false;
-            if (!vendorFilter.isEmpty()
-                    && !transaction.getVendor().equalsIgnoreCase(vendorFilter)) matches = false;
-            if (amountFilter != null && transaction.getAmount() != amountFilter) matches = false;
+        if (totals.rows == 0) {
+            System.out.println("No transactions match the chosen criteria.");
+        } else {
+            printTotals(totals);
+        }
+    }
 
-            if (matches) {
-                printTransactionRow(transaction);
-                anyFound = true;
-            }
+    /**
+     * Shows how much the ledger and its duplicate check store, what the value pools hold
+     * and how much heap the JVM is using now.
+     */
+    private static void printMemoryReport() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedBytes = runtime.totalMemory() - runtime.freeMemory();
+        int transactionCount;
+        long storedBytes;
+        long guardBytes;
+        synchronized (ledger) {
+            transactionCount = ledger.size();
+            storedBytes = ledger.storedBytes();
+            guardBytes = duplicateGuard.bytes();
         }
-        if (!anyFound) System.out.println("No transactions match the chosen criteria.");
+
+        System.out.printf("Transactions in memory: %d (%,.1f MB %s)%n", transactionCount,
+                storedBytes / (1024.0 * 1024.0), OFF_HEAP ? "of rows and strings off the heap" : "of columns");
+        System.out.printf("Duplicate check: %,.1f MB %s%n",
+                guardBytes / (1024.0 * 1024.0), OFF_HEAP ? "off the heap" : "on the heap");
+        System.out.println(valuePool.report());
+        System.out.printf("Heap in use: %,.1f MB of %,.1f MB max%n",
+                usedBytes / (1024.0 * 1024.0), runtime.maxMemory() / (1024.0 * 1024.0));
     }
 
     /* -------------------------- Parsing helpers -------------------------- */
@@ -457,12 +1320,12 @@ public class FinancialTracker {
     }
 
     /**
-     * Parses a double or returns null if the string is blank or bad.
+     * Parses an amount into whole cents or returns null if the string is blank or bad.
      */
-    private static Double parseDouble(String numberString) {
+    private static Long parseCents(String numberString) {
         if (numberString.isEmpty()) return null;
         try {
-            return Double.parseDouble(numberString);
+            return FieldDecoder.parseCents(numberString);
         } catch (Exception bad) {
             System.out.println("Invalid number: " + numberString);
             return null;
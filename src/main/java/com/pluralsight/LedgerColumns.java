@@ -0,0 +1,619 @@
+package com.pluralsight;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The in-memory ledger, stored column by column as primitives.
+ * <p>
+ * Row {@code i} is its {@link Transaction#getSortKey() sort key} (date and time as one
+ * long), amount in cents and the dictionary ids of its description and vendor – 24 bytes
+ * per row, where a {@link Transaction} with its
+ * date and time objects needs well over 100. Each distinct description and vendor
+ * string is kept once. Views scan the rows by index ({@link #select},
+ * {@link #forEachNewestFirst}); {@link #get} builds a Transaction only where one is
+ * really needed.
+ * <p>
+ * The rows and strings live either in primitive arrays on the heap or, for ledgers too
+ * big for a comfortable heap, outside it (see {@link OffHeapStore}); the views cannot
+ * tell the difference.
+ * <p>
+ * Not thread-safe: the caller guards the live store with a lock. The copies returned by
+ * {@link #select} are private to the caller and can be read without it; off the heap a
+ * copy is only valid until the next select.
+ */
+final class LedgerColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Key bytes per radix sort pass, and buckets per pass.
+     */
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /* ------------------------------------------------------------------
+       Storage
+       ------------------------------------------------------------------ */
+
+    /**
+     * The fixed-size part of every row.
+     */
+    interface Rows {
+        long sortKey(int row);
+
+        long cents(int row);
+
+        int descriptionId(int row);
+
+        int vendorId(int row);
+
+        void set(int row, long sortKey, long cents, int descriptionId, int vendorId);
+
+        /**
+         * Makes rows {@code [0, rows)} writable, keeping the existing ones.
+         */
+        void ensureCapacity(int rows);
+
+        /**
+         * Moves rows {@code [from, from + count)} to start at {@code to}; the ranges may overlap.
+         */
+        void move(int from, int to, int count);
+
+        /**
+         * Bytes reserved for rows so far.
+         */
+        long bytes();
+    }
+
+    /**
+     * Distinct strings numbered 0, 1, 2 … in the order they were first seen. Every entry
+     * also gets a folded id shared by all entries that are equal ignoring case ("Amazon",
+     * "AMAZON"), assigned once when the entry is added. Ids never change and entries are
+     * never removed, so a read-only copy can share the stored entries.
+     */
+    interface Dictionary {
+        int idOf(String value);
+
+        String value(int id);
+
+        int foldedId(int id);
+
+        /**
+         * Folded id of the entries equal to {@code text} ignoring case, or -1 if there are none.
+         */
+        int foldedIdOf(String text);
+
+        /**
+         * The entries added so far, for reading only.
+         */
+        Dictionary readOnlyCopy();
+
+        /**
+         * Bytes this dictionary holds outside the heap.
+         */
+        long offHeapBytes();
+    }
+
+    /**
+     * Longs addressed by index, zero until set: sort buffers and hash tables that have
+     * to live where the rows live.
+     */
+    interface Longs {
+        long get(int index);
+
+        void set(int index, long value);
+
+        /**
+         * Makes indexes {@code [0, length)} usable, keeping the values already set.
+         */
+        void ensureCapacity(int length);
+
+        /**
+         * Bytes reserved so far.
+         */
+        long bytes();
+    }
+
+    /**
+     * Empty longs on or off the heap, for helpers that go with a store of that kind.
+     */
+    static Longs newLongs(boolean offHeap) {
+        return offHeap ? new OffHeapStore.Longs() : new HeapLongs();
+    }
+
+    private final Rows rows;
+    private final Dictionary descriptions;
+    private final Dictionary vendors;
+    private int size;
+
+    /**
+     * How many rows at the start are already in timestamp order (oldest first) because
+     * they came from a compacted file.
+     */
+    private int sortedRows;
+
+    /**
+     * Off the heap: the rows of the last {@link #select} and the two sort buffers, shared
+     * by a store and its copies and reused by every call, because direct memory is only
+     * given back once the collector gets round to it. Null on the heap, where every
+     * call simply allocates.
+     */
+    private final Scratch scratch;
+
+    private static final class Scratch {
+        final OffHeapStore.Rows selectedRows = new OffHeapStore.Rows();
+        final Longs[] sortBuffers = {new OffHeapStore.Longs(), new OffHeapStore.Longs()};
+    }
+
+    /**
+     * An empty store, on or off the heap.
+     */
+    LedgerColumns(boolean offHeap) {
+        this(offHeap ? new OffHeapStore.Rows() : new HeapRows(),
+                offHeap ? new OffHeapStore.Dictionary() : new HeapDictionary(),
+                offHeap ? new OffHeapStore.Dictionary() : new HeapDictionary(),
+                offHeap ? new Scratch() : null);
+    }
+
+    private LedgerColumns(Rows rows, Dictionary descriptions, Dictionary vendors, Scratch scratch) {
+        this.rows = rows;
+        this.descriptions = descriptions;
+        this.vendors = vendors;
+        this.scratch = scratch;
+        rows.ensureCapacity(INITIAL_CAPACITY);
+    }
+
+    /* ------------------------------------------------------------------
+       Adding and removing rows
+       ------------------------------------------------------------------ */
+
+    int size() {
+        return size;
+    }
+
+    void add(Transaction transaction) {
+        rows.ensureCapacity(size + 1);
+        set(size++, transaction);
+    }
+
+    void addAll(List<Transaction> transactions) {
+        rows.ensureCapacity(size + transactions.size());
+        for (Transaction transaction : transactions) set(size++, transaction);
+    }
+
+    /**
+     * Puts loaded file rows in at row {@code at}, in front of the rows entered while the
+     * file was still loading; the loader adds one parsed chunk at a time right behind the
+     * file rows already here. The first {@code sortedCount} rows are in timestamp order.
+     */
+    void insert(int at, List<Transaction> transactions, int sortedCount) {
+        int added = transactions.size();
+        rows.ensureCapacity(size + added);
+        rows.move(at, at + added, size - at);
+        for (int row = 0; row < added; row++) set(at + row, transactions.get(row));
+        size += added;
+        sortedRows = sortedCount;
+    }
+
+    /**
+     * Takes the first {@code count} rows out again (file rows from a snapshot that turned
+     * out damaged halfway through loading).
+     */
+    void removeFirst(int count) {
+        rows.move(count, 0, size - count);
+        size -= count;
+        sortedRows = Math.max(0, sortedRows - count);
+    }
+
+    /**
+     * Removes the last row with the same stored values as {@code transaction} and
+     * returns its row number, or -1 if there is none.
+     */
+    int removeLast(Transaction transaction) {
+        long sortKey = transaction.getSortKey();
+        long amount = transaction.getAmountCents();
+        for (int row = size - 1; row >= 0; row--) {
+            if (rows.sortKey(row) != sortKey || rows.cents(row) != amount) continue;
+            if (!description(row).equals(transaction.getDescription())
+                    || !vendor(row).equals(transaction.getVendor())) continue;
+
+            rows.move(row + 1, row, size - row - 1);
+            size--;
+            if (row < sortedRows) sortedRows--;
+            return row;
+        }
+        return -1;
+    }
+
+    /* ------------------------------------------------------------------
+       Reading rows
+       ------------------------------------------------------------------ */
+
+    long sortKey(int row) {
+        return rows.sortKey(row);
+    }
+
+    long cents(int row) {
+        return rows.cents(row);
+    }
+
+    String description(int row) {
+        return descriptions.value(rows.descriptionId(row));
+    }
+
+    String vendor(int row) {
+        return vendors.value(rows.vendorId(row));
+    }
+
+    /**
+     * Row {@code row} as a Transaction object.
+     */
+    Transaction get(int row) {
+        long sortKey = rows.sortKey(row);
+        return new Transaction(Transaction.dateOf(sortKey), Transaction.timeOf(sortKey),
+                description(row), vendor(row), rows.cents(row));
+    }
+
+    /**
+     * Bytes reserved for the rows; off the heap also for the strings (on the heap the
+     * strings are counted by the value pool).
+     */
+    long storedBytes() {
+        return rows.bytes() + descriptions.offHeapBytes() + vendors.offHeapBytes();
+    }
+
+    /* ------------------------------------------------------------------
+       Scanning
+       ------------------------------------------------------------------ */
+
+    /**
+     * A copy of the rows matching {@code query}, in stored order. The description and
+     * vendor asked for are looked up once in the dictionaries; the scan itself only
+     * compares folded ids. The strings are not copied. Off the heap the copy's rows go
+     * to the same reused buffer every time, so the next select overwrites them.
+     */
+    LedgerColumns select(LedgerQuery query) {
+        long firstKey = query.firstSortKey();
+        long lastKey = query.lastSortKey();
+        int sign = query.sign();
+        boolean anyDescription = query.description().isEmpty();
+        boolean anyVendor = query.vendor().isEmpty();
+        int description = anyDescription ? -1 : descriptions.foldedIdOf(query.description());
+        int vendor = anyVendor ? -1 : vendors.foldedIdOf(query.vendor());
+        boolean anyAmount = query.cents() == null;
+        long amount = anyAmount ? 0 : query.cents();
+
+        LedgerColumns selected = new LedgerColumns(scratch == null ? new HeapRows() : scratch.selectedRows,
+                descriptions.readOnlyCopy(), vendors.readOnlyCopy(), scratch);
+        if ((!anyDescription && description < 0) || (!anyVendor && vendor < 0)) return selected;   // never seen
+        for (int row = 0; row < size; row++) {
+            long sortKey = rows.sortKey(row);
+            if (sortKey < firstKey || sortKey > lastKey) continue;
+            long rowCents = rows.cents(row);
+            if (sign != 0 && Long.signum(rowCents) != sign) continue;
+            if (!anyDescription && descriptions.foldedId(rows.descriptionId(row)) != description) continue;
+            if (!anyVendor && vendors.foldedId(rows.vendorId(row)) != vendor) continue;
+            if (!anyAmount && rowCents != amount) continue;
+            selected.copyRow(this, row);
+            if (row < sortedRows) selected.sortedRows++;
+        }
+        return selected;
+    }
+
+    /**
+     * Calls {@code action} with every row number in ledger order: later date first; if
+     * same date, later time first; rows with the same date and time keep their stored
+     * order. The sorted rows at the start are only merged in, not sorted again.
+     */
+    void forEachNewestFirst(IntConsumer action) {
+        int count = size - sortedRows;
+        Longs unsorted = unsortedNewestFirst(count);
+
+        // Walk the sorted part backwards one timestamp at a time (keeping stored order
+        // within a timestamp) and merge in the unsorted rows that are newer.
+        int next = 0;
+        int groupEnd = sortedRows;
+        while (groupEnd > 0) {
+            long groupKey = rows.sortKey(groupEnd - 1);
+            int groupStart = groupEnd - 1;
+            while (groupStart > 0 && rows.sortKey(groupStart - 1) == groupKey) groupStart--;
+            while (next < count && rows.sortKey(sortedRows + (int) unsorted.get(next)) > groupKey) {
+                action.accept(sortedRows + (int) unsorted.get(next++));
+            }
+            for (int row = groupStart; row < groupEnd; row++) action.accept(row);
+            groupEnd = groupStart;
+        }
+        while (next < count) action.accept(sortedRows + (int) unsorted.get(next++));
+    }
+
+    /* ------------------------------------------------------------------
+       On-heap storage
+       ------------------------------------------------------------------ */
+
+    /**
+     * One primitive array per column.
+     */
+    private static final class HeapRows implements Rows {
+        private long[] sortKeys = new long[0];
+        private long[] cents = new long[0];
+        private int[] descriptionIds = new int[0];
+        private int[] vendorIds = new int[0];
+
+        @Override
+        public long sortKey(int row) {
+            return sortKeys[row];
+        }
+
+        @Override
+        public long cents(int row) {
+            return cents[row];
+        }
+
+        @Override
+        public int descriptionId(int row) {
+            return descriptionIds[row];
+        }
+
+        @Override
+        public int vendorId(int row) {
+            return vendorIds[row];
+        }
+
+        @Override
+        public void set(int row, long sortKey, long amountCents, int descriptionId, int vendorId) {
+            sortKeys[row] = sortKey;
+            cents[row] = amountCents;
+            descriptionIds[row] = descriptionId;
+            vendorIds[row] = vendorId;
+        }
+
+        @Override
+        public void ensureCapacity(int rows) {
+            if (rows <= sortKeys.length) return;
+            int capacity = Math.max(rows, sortKeys.length + (sortKeys.length >> 1));
+            sortKeys = Arrays.copyOf(sortKeys, capacity);
+            cents = Arrays.copyOf(cents, capacity);
+            descriptionIds = Arrays.copyOf(descriptionIds, capacity);
+            vendorIds = Arrays.copyOf(vendorIds, capacity);
+        }
+
+        @Override
+        public void move(int from, int to, int count) {
+            System.arraycopy(sortKeys, from, sortKeys, to, count);
+            System.arraycopy(cents, from, cents, to, count);
+            System.arraycopy(descriptionIds, from, descriptionIds, to, count);
+            System.arraycopy(vendorIds, from, vendorIds, to, count);
+        }
+
+        @Override
+        public long bytes() {
+            return (long) sortKeys.length * (8 + 8 + 4 + 4);
+        }
+    }
+
+    /**
+     * Longs in an array.
+     */
+    private static final class HeapLongs implements Longs {
+        private long[] values = new long[0];
+
+        @Override
+        public long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        public void ensureCapacity(int length) {
+            if (length <= values.length) return;
+            values = Arrays.copyOf(values, Math.max(length, values.length + (values.length >> 1)));
+        }
+
+        @Override
+        public long bytes() {
+            return (long) values.length * 8;
+        }
+    }
+
+    /**
+     * Strings in an array, found again through a HashMap.
+     */
+    private static final class HeapDictionary implements Dictionary {
+        private String[] values;
+        private int[] foldedIds;
+        private int count;
+        private final HashMap<String, Integer> ids;            // null in read-only copies
+        private final HashMap<String, Integer> idsByFoldedKey;  // null in read-only copies
+
+        HeapDictionary() {
+            this.values = new String[64];
+            this.foldedIds = new int[64];
+            this.ids = new HashMap<>();
+            this.idsByFoldedKey = new HashMap<>();
+        }
+
+        private HeapDictionary(String[] values, int[] foldedIds, int count) {
+            this.values = values;
+            this.foldedIds = foldedIds;
+            this.count = count;
+            this.ids = null;
+            this.idsByFoldedKey = null;
+        }
+
+        @Override
+        public int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id != null) return id;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+                foldedIds = Arrays.copyOf(foldedIds, count * 2);
+            }
+            values[count] = value;
+            foldedIds[count] = idsByFoldedKey.computeIfAbsent(foldCase(value), key -> idsByFoldedKey.size());
+            ids.put(value, count);
+            return count++;
+        }
+
+        @Override
+        public String value(int id) {
+            return values[id];
+        }
+
+        @Override
+        public int foldedId(int id) {
+            return foldedIds[id];
+        }
+
+        @Override
+        public int foldedIdOf(String text) {
+            Integer foldedId = idsByFoldedKey.get(foldCase(text));
+            return foldedId == null ? -1 : foldedId;
+        }
+
+        @Override
+        public Dictionary readOnlyCopy() {
+            return new HeapDictionary(values, foldedIds, count);
+        }
+
+        @Override
+        public long offHeapBytes() {
+            return 0;
+        }
+    }
+
+    /**
+     * A key that two strings share exactly when {@link String#equalsIgnoreCase} says
+     * they are equal: every code point mapped to upper and then to lower case.
+     * Strings with nothing to fold are returned as they are.
+     */
+    static String foldCase(String text) {
+        int length = text.length();
+        int first = 0;
+        while (first < length) {
+            char c = text.charAt(first);
+            if (c >= 0x80 || (c >= 'A' && c <= 'Z')) break;
+            first++;
+        }
+        if (first == length) return text;                      // plain ASCII, already lower case
+
+        StringBuilder folded = new StringBuilder(length).append(text, 0, first);
+        for (int i = first; i < length; ) {
+            int codePoint = text.codePointAt(i);
+            folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint)));
+            i += Character.charCount(codePoint);
+        }
+        return folded.toString();
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private void set(int row, Transaction transaction) {
+        rows.set(row, transaction.getSortKey(), transaction.getAmountCents(),
+                descriptions.idOf(transaction.getDescription()), vendors.idOf(transaction.getVendor()));
+    }
+
+    /**
+     * Appends row {@code row} of {@code source}, whose dictionary ids this store shares.
+     */
+    private void copyRow(LedgerColumns source, int row) {
+        rows.ensureCapacity(size + 1);
+        Rows from = source.rows;
+        rows.set(size++, from.sortKey(row), from.cents(row),
+                from.descriptionId(row), from.vendorId(row));
+    }
+
+    /**
+     * Positions (row number minus {@code sortedRows}) of the rows after the sorted
+     * prefix, newest first; rows with the same sort key keep their stored order.
+     * <p>
+     * Each row becomes one long – how much older it is than the newest row, with its
+     * position below that – so one radix sort orders them, ties included. Rows spanning
+     * too many seconds for the position bits are radix sorted by their sort keys instead,
+     * which keeps ties in order because every pass is stable.
+     */
+    private Longs unsortedNewestFirst(int count) {
+        Longs order = sortBuffer(0, count);
+        if (count == 0) return order;
+        long newest = Long.MIN_VALUE;
+        long oldest = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            long sortKey = rows.sortKey(sortedRows + i);
+            newest = Math.max(newest, sortKey);
+            oldest = Math.min(oldest, sortKey);
+        }
+
+        int positionBits = 32 - Integer.numberOfLeadingZeros(count);
+        if (newest - oldest < 1L << (63 - positionBits)) {
+            for (int i = 0; i < count; i++) {
+                order.set(i, (newest - rows.sortKey(sortedRows + i)) << positionBits | i);
+            }
+            order = radixSort(order, sortBuffer(1, count), count, packed -> packed);
+            long positionMask = (1L << positionBits) - 1;
+            for (int i = 0; i < count; i++) order.set(i, order.get(i) & positionMask);
+        } else {
+            for (int i = 0; i < count; i++) order.set(i, i);
+            order = radixSort(order, sortBuffer(1, count), count,
+                    position -> ~(rows.sortKey(sortedRows + (int) position) ^ Long.MIN_VALUE));
+        }
+        return order;
+    }
+
+    /**
+     * Buffer {@code which} (0 or 1) of the sort, with room for {@code length} longs.
+     */
+    private Longs sortBuffer(int which, int length) {
+        Longs buffer = scratch == null ? new HeapLongs() : scratch.sortBuffers[which];
+        buffer.ensureCapacity(length);
+        return buffer;
+    }
+
+    /**
+     * Stable LSD radix sort of the first {@code count} values by {@code key} (unsigned),
+     * one byte per pass; a byte that is the same in every key costs no pass. Returns
+     * whichever of {@code values} and {@code buffer} ends up holding the result.
+     */
+    private static Longs radixSort(Longs values, Longs buffer, int count, LongUnaryOperator key) {
+        int passes = Long.SIZE / RADIX_BITS;
+        int[][] counts = new int[passes][RADIX];
+        for (int i = 0; i < count; i++) {
+            long sortKey = key.applyAsLong(values.get(i));
+            for (int pass = 0; pass < passes; pass++) {
+                counts[pass][(int) (sortKey >>> (pass * RADIX_BITS)) & (RADIX - 1)]++;
+            }
+        }
+
+        long firstKey = key.applyAsLong(values.get(0));
+        Longs source = values;
+        Longs target = buffer;
+        for (int pass = 0; pass < passes; pass++) {
+            int shift = pass * RADIX_BITS;
+            int[] starts = counts[pass];
+            if (starts[(int) (firstKey >>> shift) & (RADIX - 1)] == count) continue;
+
+            int start = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int rowsWithDigit = starts[digit];
+                starts[digit] = start;
+                start += rowsWithDigit;
+            }
+            for (int i = 0; i < count; i++) {
+                long value = source.get(i);
+                target.set(starts[(int) (key.applyAsLong(value) >>> shift) & (RADIX - 1)]++, value);
+            }
+            Longs swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+}
@@ -0,0 +1,140 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline compaction: rewrites a data file in timestamp order without exact duplicates.
+ * <p>
+ * The rewritten file replaces the original atomically (in the same plain, gzip or
+ * checksummed format) and gets a small {@code .sorted} marker that records how many
+ * bytes / rows at its start are in order. Loads use the marker to skip sorting that
+ * part; only rows appended after it still need sorting before they are merged in.
+ */
+final class LedgerCompactor {
+
+    private static final String MARKER_SUFFIX = ".sorted";
+
+    /**
+     * Oldest first – the stored order of a compacted file (the reverse of {@link Transaction#NEWEST_FIRST}).
+     */
+    static final Comparator<Transaction> OLDEST_FIRST = Comparator.comparingLong(Transaction::getSortKey);
+
+    private LedgerCompactor() {
+    }
+
+    /**
+     * Rows kept, exact duplicates dropped and malformed rows moved to the quarantine file.
+     */
+    record Summary(long rows, long duplicates, long rejected) {
+    }
+
+    /* ------------------------------------------------------------------
+       Compacting
+       ------------------------------------------------------------------ */
+
+    /**
+     * Compacts {@code dataFile} in place. Must not run while another program appends to it.
+     * Malformed rows are appended to {@code quarantineFile} ("line|reason|text").
+     */
+    static Summary compact(Path dataFile, Path quarantineFile) throws IOException {
+        TransactionLoader.LoadedRange loaded = TransactionLoader.load(
+                dataFile, 0, Long.MAX_VALUE, 0, new ValuePool(true), new AtomicLong());
+        if (!loaded.rejected().isEmpty()) {
+            try (BufferedWriter writer = Files.newBufferedWriter(quarantineFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (TransactionLoader.RejectedRow row : loaded.rejected()) {
+                    writer.write(row.lineNumber() + "|" + row.reason() + "|" + row.text());
+                    writer.newLine();
+                }
+            }
+        }
+
+        // Stable parallel merge sort: rows with the same timestamp keep their entry order.
+        Transaction[] rows = loaded.transactions().toArray(new Transaction[0]);
+        Arrays.parallelSort(rows, OLDEST_FIRST);
+
+        Path sortedText = dataFile.resolveSibling(dataFile.getFileName() + ".compact.tmp");
+        long kept = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(sortedText, StandardCharsets.UTF_8)) {
+            // Exact duplicates share a timestamp, so only rows within one timestamp are compared.
+            HashSet<String> sameTimestamp = new HashSet<>();
+            for (int i = 0; i < rows.length; i++) {
+                if (i > 0 && rows[i - 1].getSortKey() != rows[i].getSortKey()) sameTimestamp.clear();
+                String line = rows[i].toString();
+                if (!sameTimestamp.add(line)) continue;
+                writer.write(line);
+                writer.newLine();
+                kept++;
+            }
+        }
+
+        // Keep the original format, then swap the new file in.
+        Path replacement = sortedText;
+        if (CompressedLedger.isCompressed(dataFile) || WriteAheadLog.isLog(dataFile)) {
+            replacement = dataFile.resolveSibling(dataFile.getFileName() + ".compact.out.tmp");
+            if (CompressedLedger.isCompressed(dataFile)) {
+                CompressedLedger.compress(sortedText, replacement);
+            } else {
+                WriteAheadLog.convert(sortedText, replacement);
+            }
+            Files.delete(sortedText);
+        }
+        Files.move(replacement, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        Files.deleteIfExists(LedgerSnapshot.snapshotPathFor(dataFile));      // covers the old layout
+        writeMarker(dataFile, Files.size(dataFile), kept);
+        return new Summary(kept, rows.length - kept, loaded.rejected().size());
+    }
+
+    /* ------------------------------------------------------------------
+       Sorted marker
+       ------------------------------------------------------------------ */
+
+    /**
+     * Number of rows at the start of {@code dataFile} that are known to be in timestamp
+     * order, or 0 if there is no marker or the file no longer matches it.
+     */
+    static long sortedRows(Path dataFile) {
+        try {
+            String[] fields = Files.readString(markerPathFor(dataFile), StandardCharsets.UTF_8).strip().split("\\|");
+            long sortedOffset = Long.parseLong(fields[0]);
+            long rows = Long.parseLong(fields[1]);
+            long windowCrc = Long.parseLong(fields[2]);
+            if (Files.size(dataFile) < sortedOffset || LedgerSnapshot.windowCrc(dataFile, sortedOffset) != windowCrc) {
+                return 0;
+            }
+            return rows;
+        } catch (NoSuchFileException missing) {
+            return 0;
+        } catch (IOException | RuntimeException unreadable) {
+            System.out.println("Ignoring unreadable sort marker: " + unreadable.getMessage());
+            return 0;
+        }
+    }
+
+    private static void writeMarker(Path dataFile, long sortedOffset, long rows) throws IOException {
+        Path marker = markerPathFor(dataFile);
+        Path tempFile = marker.resolveSibling(marker.getFileName() + ".tmp");
+        Files.writeString(tempFile, sortedOffset + "|" + rows + "|" + LedgerSnapshot.windowCrc(dataFile, sortedOffset),
+                StandardCharsets.UTF_8);
+        Files.move(tempFile, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Marker file that belongs to {@code dataFile}, e.g. transactions.csv.sorted.
+     */
+    private static Path markerPathFor(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + MARKER_SUFFIX);
+    }
+}
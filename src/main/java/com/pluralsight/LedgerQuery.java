@@ -0,0 +1,83 @@
+package com.pluralsight;
+
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * What a ledger view or report asks for: an optional date range, deposits or payments
+ * only, and an exact (case-insensitive) description, vendor or amount.
+ * <p>
+ * The same query tests a {@link Transaction} read from a file and is scanned directly
+ * over the in-memory columns by {@link LedgerColumns#select}, so the normal views never
+ * have to build Transaction objects.
+ *
+ * @param startDate   first date included, or null for no lower bound
+ * @param endDate     last date included, or null for no upper bound
+ * @param sign        1 for deposits only, -1 for payments only, 0 for both
+ * @param description description to match ignoring case, or "" for any
+ * @param vendor      vendor to match ignoring case, or "" for any
+ * @param cents       exact amount in cents, or null for any
+ */
+record LedgerQuery(LocalDate startDate, LocalDate endDate, int sign,
+                   String description, String vendor, Long cents) implements Predicate<Transaction> {
+
+    /**
+     * Every row.
+     */
+    static final LedgerQuery ALL = new LedgerQuery(null, null, 0, "", "", null);
+
+    LedgerQuery between(LocalDate start, LocalDate end) {
+        return new LedgerQuery(start, end, sign, description, vendor, cents);
+    }
+
+    LedgerQuery depositsOnly() {
+        return new LedgerQuery(startDate, endDate, 1, description, vendor, cents);
+    }
+
+    LedgerQuery paymentsOnly() {
+        return new LedgerQuery(startDate, endDate, -1, description, vendor, cents);
+    }
+
+    LedgerQuery withDescription(String text) {
+        return new LedgerQuery(startDate, endDate, sign, text, vendor, cents);
+    }
+
+    LedgerQuery withVendor(String text) {
+        return new LedgerQuery(startDate, endDate, sign, description, text, cents);
+    }
+
+    LedgerQuery withAmount(Long amountCents) {
+        return new LedgerQuery(startDate, endDate, sign, description, vendor, amountCents);
+    }
+
+    /* ------------------------------------------------------------------
+       Bounds as the columns store them
+       ------------------------------------------------------------------ */
+
+    /**
+     * Smallest {@link Transaction#getSortKey() sort key} in range: the start date at 00:00:00.
+     */
+    long firstSortKey() {
+        return startDate == null ? Long.MIN_VALUE : Transaction.firstKeyOfDay(startDate.toEpochDay());
+    }
+
+    /**
+     * Largest sort key in range: the end date at 23:59:59.
+     */
+    long lastSortKey() {
+        return endDate == null ? Long.MAX_VALUE : Transaction.lastKeyOfDay(endDate.toEpochDay());
+    }
+
+    /**
+     * Tests a row read from a file (archive browsing and per-month segment reads).
+     */
+    @Override
+    public boolean test(Transaction transaction) {
+        long sortKey = transaction.getSortKey();
+        if (sortKey < firstSortKey() || sortKey > lastSortKey()) return false;
+        if (sign != 0 && Long.signum(transaction.getAmountCents()) != sign) return false;
+        if (!description.isEmpty() && !transaction.getDescription().equalsIgnoreCase(description)) return false;
+        if (!vendor.isEmpty() && !transaction.getVendor().equalsIgnoreCase(vendor)) return false;
+        return cents == null || transaction.getAmountCents() == cents;
+    }
+}
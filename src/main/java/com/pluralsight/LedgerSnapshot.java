@@ -0,0 +1,264 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary copy of the in-memory ledger.
+ * <p>
+ * The snapshot remembers how many bytes of the data file it covers, so on startup
+ * only the lines appended after that offset have to be parsed as text. Descriptions
+ * and vendors are stored once in a string table and referenced by index.
+ * <p>
+ * Layout: magic, version, covered CSV offset and line count, CRC-32 of the CSV bytes
+ * just before that offset, string table, then one fixed-size record per transaction.
+ */
+final class LedgerSnapshot {
+
+    /* ------------------------------------------------------------------
+       Constants
+       ------------------------------------------------------------------ */
+
+    private static final int MAGIC = 0x46545331;                // "FTS1"
+    private static final int VERSION = 3;
+
+    /**
+     * Size of the CSV window (ending at the covered offset) whose CRC is stored,
+     * so a snapshot is ignored once the data file has been replaced or edited.
+     */
+    private static final int CHECK_WINDOW_BYTES = 4096;
+
+    /**
+     * Once this many CSV bytes have to be replayed on top of the snapshot,
+     * a fresh snapshot is written in the background.
+     */
+    static final long REBUILD_TAIL_BYTES = 8L << 20;            // 8 MiB
+
+    /**
+     * Bytes of one transaction record: epoch day, second of day, two string indexes, cents.
+     */
+    private static final int RECORD_BYTES = 4 + 4 + 4 + 4 + 8;
+
+    /**
+     * Rows handed on (reading) or taken from the live ledger under its lock (writing) at a time.
+     */
+    private static final int BLOCK_ROWS = 1 << 16;
+
+    private LedgerSnapshot() {
+    }
+
+    /**
+     * The CSV offset / number of lines the transactions restored from a snapshot cover.
+     * The line count can exceed the row count when bad rows were quarantined.
+     */
+    record Contents(long csvOffset, long csvLines) {
+    }
+
+    /**
+     * Snapshot file that belongs to {@code dataFile}, e.g. transactions.csv.snapshot.
+     */
+    static Path snapshotPathFor(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".snapshot");
+    }
+
+    /* ------------------------------------------------------------------
+       Reading
+       ------------------------------------------------------------------ */
+
+    /**
+     * Reads the snapshot for {@code dataFile}, sharing values through {@code pool}, and
+     * hands its transactions to {@code rowSink} a block at a time, in file order.
+     * Returns null – before handing anything on – if there is none or it no longer matches
+     * the data file (the caller then parses the whole CSV). Throws if the snapshot turns
+     * out unreadable after rows were handed on, so the caller can take them out again.
+     */
+    static Contents read(Path dataFile, ValuePool pool, Consumer<List<Transaction>> rowSink) throws IOException {
+        Path snapshotFile = snapshotPathFor(dataFile);
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16));
+        } catch (NoSuchFileException missing) {
+            return null;
+        }
+
+        try (in) {
+            long csvOffset;
+            long csvLines;
+            String[] strings;
+            int count;
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+                csvOffset = in.readLong();
+                csvLines = in.readLong();
+                long windowCrc = in.readLong();
+                if (Files.size(dataFile) < csvOffset || windowCrc(dataFile, csvOffset) != windowCrc) return null;
+
+                strings = new String[in.readInt()];
+                long headerBytes = 4 + 4 + 8 + 8 + 8 + 4 + 4;      // … string count, row count
+                byte[] scratch = new byte[256];
+                for (int i = 0; i < strings.length; i++) {
+                    int length = in.readInt();
+                    scratch = ByteField.ensureCapacity(scratch, length);
+                    in.readFully(scratch, 0, length);
+                    strings[i] = pool.string(new String(scratch, 0, length, StandardCharsets.UTF_8));
+                    headerBytes += 4 + length;
+                }
+                count = in.readInt();
+                // A cut-off snapshot is caught here, before any row is handed on.
+                if (count < 0 || Files.size(snapshotFile) != headerBytes + (long) count * RECORD_BYTES) {
+                    throw new IOException("wrong size");
+                }
+            } catch (IOException | RuntimeException unreadable) {
+                System.out.println("Ignoring unreadable snapshot: " + unreadable.getMessage());
+                return null;
+            }
+
+            try {
+                ArrayList<Transaction> block = new ArrayList<>(Math.min(count, BLOCK_ROWS));
+                for (int i = 0; i < count; i++) {
+                    LocalDate date = pool.date(LocalDate.ofEpochDay(in.readInt()));
+                    LocalTime time = pool.time(in.readInt());
+                    String description = strings[in.readInt()];
+                    String vendor = strings[in.readInt()];
+                    long amountCents = in.readLong();
+                    block.add(new Transaction(date, time, description, vendor, amountCents));
+                    if (block.size() == BLOCK_ROWS) {
+                        rowSink.accept(block);
+                        block = new ArrayList<>(BLOCK_ROWS);
+                    }
+                }
+                if (!block.isEmpty()) rowSink.accept(block);
+            } catch (RuntimeException damaged) {
+                throw new IOException("Damaged snapshot: " + damaged.getMessage(), damaged);
+            }
+            return new Contents(csvOffset, csvLines);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Writing
+       ------------------------------------------------------------------ */
+
+    /**
+     * Writes rows {@code [0, rowCount)} of the live {@code ledger} – which must be exactly
+     * the rows in the first {@code csvOffset} bytes / {@code csvLines} lines of the data
+     * file, and stay in place once loaded – to a temp file, then swaps it in. The rows are
+     * read {@link #BLOCK_ROWS} at a time while holding the ledger's lock, so nothing is
+     * copied up front and a save never waits for the whole snapshot.
+     */
+    static void write(Path dataFile, LedgerColumns ledger, int rowCount, long csvOffset, long csvLines)
+            throws IOException {
+        Path snapshotFile = snapshotPathFor(dataFile);
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+
+        // Build the string table: each distinct description/vendor gets one index.
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (int start = 0; start < rowCount; start += BLOCK_ROWS) {
+            int end = Math.min(rowCount, start + BLOCK_ROWS);
+            synchronized (ledger) {
+                for (int row = start; row < end; row++) {
+                    stringIds.computeIfAbsent(ledger.description(row), key -> { strings.add(key); return strings.size() - 1; });
+                    stringIds.computeIfAbsent(ledger.vendor(row), key -> { strings.add(key); return strings.size() - 1; });
+                }
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csvOffset);
+            out.writeLong(csvLines);
+            out.writeLong(windowCrc(dataFile, csvOffset));
+
+            out.writeInt(strings.size());
+            for (String text : strings) {
+                byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+
+            out.writeInt(rowCount);
+            long[] sortKeys = new long[Math.min(rowCount, BLOCK_ROWS)];
+            long[] cents = new long[sortKeys.length];
+            int[] descriptionIds = new int[sortKeys.length];
+            int[] vendorIds = new int[sortKeys.length];
+            for (int start = 0; start < rowCount; start += BLOCK_ROWS) {
+                int blockRows = Math.min(rowCount - start, BLOCK_ROWS);
+                synchronized (ledger) {
+                    for (int i = 0; i < blockRows; i++) {
+                        sortKeys[i] = ledger.sortKey(start + i);
+                        cents[i] = ledger.cents(start + i);
+                        descriptionIds[i] = stringIds.get(ledger.description(start + i));
+                        vendorIds[i] = stringIds.get(ledger.vendor(start + i));
+                    }
+                }
+                for (int i = 0; i < blockRows; i++) {
+                    out.writeInt((int) Math.floorDiv(sortKeys[i], Transaction.SECONDS_PER_DAY));
+                    out.writeInt(Math.floorMod(sortKeys[i], Transaction.SECONDS_PER_DAY));
+                    out.writeInt(descriptionIds[i]);
+                    out.writeInt(vendorIds[i]);
+                    out.writeLong(cents[i]);
+                }
+            }
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Starts a thread that writes a new snapshot of rows {@code [0, rowCount)} of the live
+     * {@code ledger} (see {@link #write}). The thread is not a daemon: the JVM finishes the
+     * snapshot before exiting instead of throwing the work away.
+     */
+    static void writeInBackground(Path dataFile, LedgerColumns ledger, int rowCount, long csvOffset, long csvLines) {
+        Thread writer = new Thread(() -> {
+            try {
+                write(dataFile, ledger, rowCount, csvOffset, csvLines);
+            } catch (IOException ioException) {
+                System.out.println("Failed to write snapshot: " + ioException.getMessage());
+            }
+        }, "snapshot-writer");
+        writer.setDaemon(false);                // threads inherit daemon status from their creator
+        writer.start();
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * CRC-32 of the (up to) {@link #CHECK_WINDOW_BYTES} bytes that end at {@code csvOffset}.
+     */
+    static long windowCrc(Path dataFile, long csvOffset) throws IOException {
+        int windowLength = (int) Math.min(CHECK_WINDOW_BYTES, csvOffset);
+        ByteBuffer window = ByteBuffer.allocate(windowLength);
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long position = csvOffset - windowLength;
+            while (window.hasRemaining()) {
+                if (channel.read(window, position + window.position()) < 0) break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(window.flip());
+        return crc.getValue();
+    }
+}
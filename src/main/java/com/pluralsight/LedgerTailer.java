@@ -0,0 +1,148 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Follows the data file while the program runs and hands over rows that other
+ * processes append to it.
+ * <p>
+ * A {@link WatchService} on the file's directory wakes the tailer whenever the file
+ * changes. It remembers the byte offset (and line number) it has consumed so far and
+ * parses only the complete lines after it – a half-written last line is left for the
+ * next wake-up. The file is never reloaded from the start.
+ */
+final class LedgerTailer {
+
+    private final Path dataFile;
+    private final Consumer<TransactionLoader.LoadedRange> sink;
+    private final ValuePool pool;
+    private long consumedOffset;
+    private long consumedLines;
+    private boolean framed;                     // gzip members or checksummed records
+    private volatile boolean stopped;
+
+    /**
+     * @param dataFile    file to follow
+     * @param startOffset first byte not yet in memory (must be the start of a line)
+     * @param startLine   number of lines before {@code startOffset}
+     * @param pool        shares values with the rows already in memory
+     * @param sink        receives every batch of newly appended rows, on the tailer thread
+     */
+    LedgerTailer(Path dataFile, long startOffset, long startLine, ValuePool pool,
+                 Consumer<TransactionLoader.LoadedRange> sink) {
+        this.dataFile = dataFile.toAbsolutePath();
+        this.consumedOffset = startOffset;
+        this.consumedLines = startLine;
+        this.pool = pool;
+        this.sink = sink;
+    }
+
+    /**
+     * Starts following the file on a daemon thread.
+     */
+    void start() throws IOException {
+        framed = CompressedLedger.isCompressed(dataFile) || WriteAheadLog.isLog(dataFile);
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        dataFile.getParent().register(watcher,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+        Thread tailer = new Thread(() -> watch(watcher), "ledger-tailer");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    /**
+     * False once the tailer has given up following the file.
+     */
+    boolean isRunning() {
+        return !stopped;
+    }
+
+    /* ------------------------------------------------------------------
+       Watch loop
+       ------------------------------------------------------------------ */
+
+    private void watch(WatchService watcher) {
+        try (watcher) {
+            catchUp();                                  // rows appended before the watch began
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean ourFile = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object changed = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || dataFile.getFileName().equals(changed)) {
+                        ourFile = true;
+                    }
+                }
+                if (ourFile) catchUp();
+                if (!key.reset()) return;               // directory is gone
+            }
+        } catch (InterruptedException | ClosedWatchServiceException stopped) {
+            // shutting down
+        } catch (IOException ioException) {
+            System.out.println("Stopped following data file: " + ioException.getMessage());
+        } finally {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Parses every complete line between the consumed offset and the end of the file.
+     */
+    private void catchUp() throws IOException {
+        long fileSize = Files.size(dataFile);
+        if (fileSize < consumedOffset) {
+            System.out.println("Data file shrank – restart the program to reload it.");
+            consumedOffset = fileSize;
+            return;
+        }
+
+        // Compressed and checksummed files are cut at complete members / records by the loader instead.
+        // In plain files a batch that is not completely written yet waits for the next wake-up.
+        long completeEnd = framed ? fileSize
+                : CommitMarker.committedEnd(dataFile, consumedOffset, endOfLastCompleteLine(consumedOffset, fileSize));
+        if (completeEnd <= consumedOffset) return;
+
+        TransactionLoader.LoadedRange appended = TransactionLoader.load(
+                dataFile, consumedOffset, completeEnd, consumedLines, pool, new AtomicLong());
+        consumedOffset = appended.endOffset();
+        consumedLines = appended.endLine();
+        sink.accept(appended);
+    }
+
+    /**
+     * Offset just after the last '\n' in {@code [from, to)}, or {@code from} if there is none.
+     */
+    private long endOfLastCompleteLine(long from, long to) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(8192);
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long blockEnd = to;
+            while (blockEnd > from) {
+                long blockStart = Math.max(from, blockEnd - block.capacity());
+                block.clear().limit((int) (blockEnd - blockStart));
+                while (block.hasRemaining()) {
+                    if (channel.read(block, blockStart + block.position()) < 0) break;
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') return blockStart + i + 1;
+                }
+                blockEnd = blockStart;
+            }
+        }
+        return from;
+    }
+}
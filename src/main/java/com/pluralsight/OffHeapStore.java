@@ -0,0 +1,378 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Ledger storage outside the Java heap (-Dtracker.offHeap=true), for ledgers of tens of
+ * millions of rows.
+ * <p>
+ * Rows are fixed 24-byte records and strings are UTF-8 entries in a separate arena, both
+ * in 1 MiB direct buffers that the garbage collector never has to scan or copy. The hash
+ * table that finds a string again, the rows of a listing and its sort buffers, and the
+ * duplicate check's filter and index ({@link Longs}) are off the heap too. What is left
+ * on the heap is one buffer object per 1 MiB chunk, not per row. The size of direct
+ * memory is limited by {@code -XX:MaxDirectMemorySize} (by default the maximum heap size).
+ */
+final class OffHeapStore {
+
+    /**
+     * Size of every arena chunk – only longer strings get a chunk of their own.
+     */
+    static final int CHUNK_BYTES = 1 << 20;
+
+    private OffHeapStore() {
+    }
+
+    /* ------------------------------------------------------------------
+       Arenas
+       ------------------------------------------------------------------ */
+
+    /**
+     * Append-only memory in direct chunks. An address is {@code chunk << 32 | offset};
+     * an allocation never spans two chunks. Chunks are only ever added, so a view can
+     * keep reading the chunks that existed when it was taken.
+     */
+    static final class Arena {
+        private ByteBuffer[] chunks = new ByteBuffer[8];
+        private int chunkCount;
+        private int used;                                       // bytes used in the last chunk
+        private long bytes;
+
+        long allocate(int length) {
+            if (chunkCount == 0 || used + length > chunks[chunkCount - 1].capacity()) {
+                if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+                int capacity = Math.max(CHUNK_BYTES, length);
+                chunks[chunkCount++] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+                bytes += capacity;
+                used = 0;
+            }
+            long address = (long) (chunkCount - 1) << 32 | used;
+            used += length;
+            return address;
+        }
+
+        ByteBuffer chunk(long address) {
+            return chunks[(int) (address >>> 32)];
+        }
+
+        static int offset(long address) {
+            return (int) address;
+        }
+
+        long bytes() {
+            return bytes;
+        }
+
+        /**
+         * The chunks allocated so far, for reading only.
+         */
+        Arena readOnlyView() {
+            Arena view = new Arena();
+            view.chunks = chunks;
+            view.chunkCount = chunkCount;
+            view.used = Integer.MAX_VALUE;                      // a view never allocates
+            view.bytes = bytes;
+            return view;
+        }
+    }
+
+    /**
+     * Fixed-size records addressed by index, a whole number of them per chunk.
+     */
+    static final class Slots {
+        private final Arena arena;
+        private final int slotBytes;
+        private final int slotsPerChunk;
+        private int capacity;
+
+        Slots(int slotBytes) {
+            this(new Arena(), slotBytes, 0);
+        }
+
+        private Slots(Arena arena, int slotBytes, int capacity) {
+            this.arena = arena;
+            this.slotBytes = slotBytes;
+            this.slotsPerChunk = CHUNK_BYTES / slotBytes;
+            this.capacity = capacity;
+        }
+
+        void ensureCapacity(int slots) {
+            while (capacity < slots) {
+                arena.allocate(slotsPerChunk * slotBytes);      // always a fresh chunk
+                capacity += slotsPerChunk;
+            }
+        }
+
+        ByteBuffer chunk(int index) {
+            return arena.chunks[index / slotsPerChunk];
+        }
+
+        int offset(int index) {
+            return index % slotsPerChunk * slotBytes;
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        long bytes() {
+            return arena.bytes();
+        }
+
+        Slots readOnlyView() {
+            return new Slots(arena.readOnlyView(), slotBytes, capacity);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Rows
+       ------------------------------------------------------------------ */
+
+    /**
+     * Layout: sort key (long), cents (long), description id (int), vendor id (int).
+     */
+    static final class Rows implements LedgerColumns.Rows {
+        private static final int ROW_BYTES = 24;
+
+        private final Slots slots = new Slots(ROW_BYTES);
+
+        @Override
+        public long sortKey(int row) {
+            return slots.chunk(row).getLong(slots.offset(row));
+        }
+
+        @Override
+        public long cents(int row) {
+            return slots.chunk(row).getLong(slots.offset(row) + 8);
+        }
+
+        @Override
+        public int descriptionId(int row) {
+            return slots.chunk(row).getInt(slots.offset(row) + 16);
+        }
+
+        @Override
+        public int vendorId(int row) {
+            return slots.chunk(row).getInt(slots.offset(row) + 20);
+        }
+
+        @Override
+        public void set(int row, long sortKey, long cents, int descriptionId, int vendorId) {
+            ByteBuffer chunk = slots.chunk(row);
+            int offset = slots.offset(row);
+            chunk.putLong(offset, sortKey);
+            chunk.putLong(offset + 8, cents);
+            chunk.putInt(offset + 16, descriptionId);
+            chunk.putInt(offset + 20, vendorId);
+        }
+
+        @Override
+        public void ensureCapacity(int rows) {
+            slots.ensureCapacity(rows);
+        }
+
+        @Override
+        public void move(int from, int to, int count) {
+            if (to > from) {
+                for (int i = count - 1; i >= 0; i--) copy(from + i, to + i);
+            } else {
+                for (int i = 0; i < count; i++) copy(from + i, to + i);
+            }
+        }
+
+        @Override
+        public long bytes() {
+            return slots.bytes();
+        }
+
+        private void copy(int fromRow, int toRow) {
+            ByteBuffer source = slots.chunk(fromRow);
+            ByteBuffer target = slots.chunk(toRow);
+            int sourceOffset = slots.offset(fromRow);
+            int targetOffset = slots.offset(toRow);
+            for (int field = 0; field < ROW_BYTES; field += 8) {
+                target.putLong(targetOffset + field, source.getLong(sourceOffset + field));
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Longs
+       ------------------------------------------------------------------ */
+
+    /**
+     * One long per 8-byte slot; new chunks start zeroed.
+     */
+    static final class Longs implements LedgerColumns.Longs {
+        private final Slots slots = new Slots(Long.BYTES);
+
+        @Override
+        public long get(int index) {
+            return slots.chunk(index).getLong(slots.offset(index));
+        }
+
+        @Override
+        public void set(int index, long value) {
+            slots.chunk(index).putLong(slots.offset(index), value);
+        }
+
+        @Override
+        public void ensureCapacity(int length) {
+            slots.ensureCapacity(length);
+        }
+
+        @Override
+        public long bytes() {
+            return slots.bytes();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Strings
+       ------------------------------------------------------------------ */
+
+    /**
+     * Strings stored as {@code length, UTF-8 bytes} in an arena. Entry {@code id} is a
+     * 16-byte record (address, hash, folded id); an open-addressing table of ids finds
+     * an entry by its bytes. Folded ids are the ids of a second dictionary that holds the
+     * case-folded keys.
+     */
+    static final class Dictionary implements LedgerColumns.Dictionary {
+        private static final int ENTRY_BYTES = 16;
+
+        private final Arena strings;
+        private final Slots entries;
+        private Slots table;                                    // id + 1 per slot, 0 = free; null in copies
+        private int tableMask;
+        private int count;
+        private final Dictionary foldedKeys;                    // null in the folded-key dictionary itself
+
+        Dictionary() {
+            this(true);
+        }
+
+        private Dictionary(boolean withFoldedKeys) {
+            this.strings = new Arena();
+            this.entries = new Slots(ENTRY_BYTES);
+            this.foldedKeys = withFoldedKeys ? new Dictionary(false) : null;
+            resizeTable(1 << 12);
+        }
+
+        private Dictionary(Dictionary source) {
+            this.strings = source.strings.readOnlyView();
+            this.entries = source.entries.readOnlyView();
+            this.count = source.count;
+            this.foldedKeys = null;
+        }
+
+        @Override
+        public int idOf(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(bytes);
+            int slot = hash & tableMask;
+            while (true) {
+                int stored = table.chunk(slot).getInt(table.offset(slot));
+                if (stored == 0) break;
+                if (hashOf(stored - 1) == hash && bytesEqual(stored - 1, bytes)) return stored - 1;
+                slot = (slot + 1) & tableMask;
+            }
+
+            int id = count++;
+            long address = strings.allocate(4 + bytes.length);
+            ByteBuffer chunk = strings.chunk(address);
+            chunk.putInt(Arena.offset(address), bytes.length);
+            chunk.put(Arena.offset(address) + 4, bytes);
+
+            entries.ensureCapacity(count);
+            ByteBuffer entry = entries.chunk(id);
+            int entryOffset = entries.offset(id);
+            entry.putLong(entryOffset, address);
+            entry.putInt(entryOffset + 8, hash);
+            entry.putInt(entryOffset + 12, foldedKeys == null ? id : foldedKeys.idOf(LedgerColumns.foldCase(value)));
+
+            table.chunk(slot).putInt(table.offset(slot), id + 1);
+            if (count * 2 > table.capacity()) resizeTable(table.capacity() * 2);
+            return id;
+        }
+
+        @Override
+        public String value(int id) {
+            long address = entries.chunk(id).getLong(entries.offset(id));
+            ByteBuffer chunk = strings.chunk(address);
+            byte[] bytes = new byte[chunk.getInt(Arena.offset(address))];
+            chunk.get(Arena.offset(address) + 4, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int foldedId(int id) {
+            return entries.chunk(id).getInt(entries.offset(id) + 12);
+        }
+
+        @Override
+        public int foldedIdOf(String text) {
+            return foldedKeys == null ? find(text) : foldedKeys.find(LedgerColumns.foldCase(text));
+        }
+
+        @Override
+        public LedgerColumns.Dictionary readOnlyCopy() {
+            return new Dictionary(this);
+        }
+
+        @Override
+        public long offHeapBytes() {
+            long bytes = strings.bytes() + entries.bytes() + (table == null ? 0 : table.bytes());
+            return foldedKeys == null ? bytes : bytes + foldedKeys.offHeapBytes();
+        }
+
+        /**
+         * Id of {@code value}, or -1 if it has never been added.
+         */
+        private int find(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(bytes);
+            for (int slot = hash & tableMask; ; slot = (slot + 1) & tableMask) {
+                int stored = table.chunk(slot).getInt(table.offset(slot));
+                if (stored == 0) return -1;
+                if (hashOf(stored - 1) == hash && bytesEqual(stored - 1, bytes)) return stored - 1;
+            }
+        }
+
+        private int hashOf(int id) {
+            return entries.chunk(id).getInt(entries.offset(id) + 8);
+        }
+
+        private boolean bytesEqual(int id, byte[] bytes) {
+            long address = entries.chunk(id).getLong(entries.offset(id));
+            ByteBuffer chunk = strings.chunk(address);
+            int offset = Arena.offset(address);
+            if (chunk.getInt(offset) != bytes.length) return false;
+            for (int i = 0; i < bytes.length; i++) {
+                if (chunk.get(offset + 4 + i) != bytes[i]) return false;
+            }
+            return true;
+        }
+
+        /**
+         * A new table of {@code slotCount} (a power of two) with every entry put back in.
+         */
+        private void resizeTable(int slotCount) {
+            table = new Slots(4);
+            table.ensureCapacity(slotCount);
+            tableMask = Integer.highestOneBit(table.capacity()) - 1;
+            for (int id = 0; id < count; id++) {
+                int slot = hashOf(id) & tableMask;
+                while (table.chunk(slot).getInt(table.offset(slot)) != 0) slot = (slot + 1) & tableMask;
+                table.chunk(slot).putInt(table.offset(slot), id + 1);
+            }
+        }
+
+        private static int hash(byte[] bytes) {
+            int hash = Arrays.hashCode(bytes) * 0x9E3779B9;
+            return hash ^ (hash >>> 16);                        // the table index uses the low bits
+        }
+    }
+}
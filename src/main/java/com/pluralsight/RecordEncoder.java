@@ -0,0 +1,210 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes the pipe-delimited record of a transaction ("2025-05-10|14:35:22|Coffee|Starbucks|-4.25").
+ * <p>
+ * Produces exactly what {@code "%s|%s|%s|%s|%.2f"} with yyyy-MM-dd / HH:mm:ss produced,
+ * digit by digit, so files written before and after look the same – but without a
+ * Formatter, new DateTimeFormatters or boxing per row. Callers append into their own
+ * reusable StringBuilder; {@link #line} uses one per thread. The append path skips the
+ * text altogether: {@link #put} writes the record's bytes straight into a (direct) buffer.
+ */
+final class RecordEncoder {
+
+    /**
+     * Only used for years outside 1 … 9999, which need a sign or more digits.
+     */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private static final ThreadLocal<StringBuilder> LINE_BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(96));
+
+    private RecordEncoder() {
+    }
+
+    /* ------------------------------------------------------------------
+       Whole records
+       ------------------------------------------------------------------ */
+
+    /**
+     * The stored line of {@code transaction}, without line break.
+     */
+    static String line(Transaction transaction) {
+        StringBuilder buffer = LINE_BUFFER.get();
+        buffer.setLength(0);
+        return append(transaction, buffer).toString();
+    }
+
+    /**
+     * Appends the stored line of {@code transaction} (without line break) to {@code out}.
+     */
+    static StringBuilder append(Transaction transaction, StringBuilder out) {
+        appendDate(transaction.getDate(), out);
+        out.append('|');
+        appendTime(transaction.getTime(), out);
+        out.append('|').append(transaction.getDescription())
+                .append('|').append(transaction.getVendor())
+                .append('|');
+        appendAmount(transaction.getAmountCents(), out);
+        return out;
+    }
+
+    /**
+     * Puts the stored line of {@code transaction} (without line break) into {@code out} as
+     * UTF-8 – the same bytes as {@code line(transaction)} would give, but without a String
+     * or byte array in between. The caller makes sure there is room for {@link #maxBytes}.
+     */
+    static void put(Transaction transaction, ByteBuffer out) {
+        LocalDate date = transaction.getDate();
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            putUtf8(date.format(DATE_FORMATTER), out);
+        } else {
+            putDigits(year, 4, out);
+            out.put((byte) '-');
+            putDigits(date.getMonthValue(), 2, out);
+            out.put((byte) '-');
+            putDigits(date.getDayOfMonth(), 2, out);
+        }
+        out.put((byte) '|');
+        LocalTime time = transaction.getTime();
+        putDigits(time.getHour(), 2, out);
+        out.put((byte) ':');
+        putDigits(time.getMinute(), 2, out);
+        out.put((byte) ':');
+        putDigits(time.getSecond(), 2, out);
+        out.put((byte) '|');
+        putUtf8(transaction.getDescription(), out);
+        out.put((byte) '|');
+        putUtf8(transaction.getVendor(), out);
+        out.put((byte) '|');
+
+        long cents = transaction.getAmountCents();
+        if (cents < 0) out.put((byte) '-');
+        long negativeCents = cents < 0 ? cents : -cents;       // negative, so Long.MIN_VALUE works too
+        putDigits(-(negativeCents / 100), 1, out);
+        out.put((byte) '.');
+        putDigits((int) -(negativeCents % 100), 2, out);
+    }
+
+    /**
+     * Upper bound for the bytes {@link #put} writes for {@code transaction}.
+     */
+    static int maxBytes(Transaction transaction) {
+        // date (16 for a signed year), time, amount (sign, 17 digits, '.', 2 decimals) and 4 '|'
+        return 16 + 8 + 21 + 4 + maxUtf8Bytes(transaction.getDescription()) + maxUtf8Bytes(transaction.getVendor());
+    }
+
+    /* ------------------------------------------------------------------
+       Fields
+       ------------------------------------------------------------------ */
+
+    /**
+     * yyyy-MM-dd
+     */
+    static void appendDate(LocalDate date, StringBuilder out) {
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            out.append(date.format(DATE_FORMATTER));
+            return;
+        }
+        appendDigits(year, 4, out);
+        out.append('-');
+        appendDigits(date.getMonthValue(), 2, out);
+        out.append('-');
+        appendDigits(date.getDayOfMonth(), 2, out);
+    }
+
+    /**
+     * HH:mm:ss (fractions of a second are not stored)
+     */
+    static void appendTime(LocalTime time, StringBuilder out) {
+        appendDigits(time.getHour(), 2, out);
+        out.append(':');
+        appendDigits(time.getMinute(), 2, out);
+        out.append(':');
+        appendDigits(time.getSecond(), 2, out);
+    }
+
+    /**
+     * An amount in cents with two decimals: -425 gives -4.25, 7 gives 0.07.
+     */
+    static void appendAmount(long cents, StringBuilder out) {
+        if (cents < 0) out.append('-');
+        // Divide the negative value so Long.MIN_VALUE works too.
+        long negativeCents = cents < 0 ? cents : -cents;
+        out.append(-(negativeCents / 100)).append('.');
+        appendDigits((int) -(negativeCents % 100), 2, out);
+    }
+
+    /**
+     * {@link #appendAmount} as a String, for display.
+     */
+    static String amount(long cents) {
+        StringBuilder text = new StringBuilder(24);
+        appendAmount(cents, text);
+        return text.toString();
+    }
+
+    /**
+     * Puts {@code text} into {@code out} as UTF-8, char by char – ASCII text (the usual
+     * case) byte for byte, without a byte array in between. An unpaired surrogate becomes
+     * '?', as with {@code getBytes(UTF_8)}. The caller makes sure there is room for
+     * {@link #maxUtf8Bytes} bytes.
+     */
+    static void putUtf8(String text, ByteBuffer out) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (!Character.isSurrogate(c)) {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else {
+                out.put((byte) '?');
+            }
+        }
+    }
+
+    /**
+     * Upper bound for the UTF-8 length of {@code text}.
+     */
+    static int maxUtf8Bytes(String text) {
+        return text.length() * 3;
+    }
+
+    /**
+     * Puts {@code value} (0 or more) zero-padded to at least {@code width} ASCII digits.
+     */
+    private static void putDigits(long value, int width, ByteBuffer out) {
+        int digits = 1;
+        for (long limit = 10; digits < 19 && value >= limit; limit *= 10) digits++;
+        int start = out.position();
+        int end = start + Math.max(width, digits);
+        for (int i = end - 1; i >= start; i--) {
+            out.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(end);
+    }
+
+    /**
+     * Appends {@code value} (0 or more) zero-padded to at least {@code width} digits.
+     */
+    private static void appendDigits(int value, int width, StringBuilder out) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) out.append('0');
+        }
+        out.append(value);
+    }
+}
@@ -0,0 +1,171 @@
+package com.pluralsight;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ledger stored as one data file per month instead of a single transactions.csv.
+ * <p>
+ * The directory holds segments named like {@code 2024-05.csv} plus a small manifest
+ * with one {@code month|file} line per segment. Each row lives in the segment of its
+ * own date, so a question about a period only has to open the segments of the months
+ * it overlaps. The manifest is replaced atomically whenever a month is added.
+ */
+final class SegmentedLedger {
+
+    /* ------------------------------------------------------------------
+       Constants and state
+       ------------------------------------------------------------------ */
+
+    static final String MANIFEST_FILE_NAME = "manifest";
+
+    private final Path directory;
+    private final TreeMap<YearMonth, Path> segments = new TreeMap<>();     // guarded by this
+
+    /**
+     * Row count, skipped (malformed) row count and segment count of a {@link #split}.
+     */
+    record SplitSummary(long rows, long skipped, int segments) {
+    }
+
+    private SegmentedLedger(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * True if {@code directory} holds a segmented ledger (i.e. has a manifest).
+     */
+    static boolean isSegmented(Path directory) {
+        return Files.isRegularFile(directory.resolve(MANIFEST_FILE_NAME));
+    }
+
+    /**
+     * Reads the manifest of the segmented ledger in {@code directory}.
+     */
+    static SegmentedLedger open(Path directory) throws IOException {
+        SegmentedLedger ledger = new SegmentedLedger(directory);
+        for (String line : Files.readAllLines(directory.resolve(MANIFEST_FILE_NAME), StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            String[] fields = line.split("\\|");
+            ledger.segments.put(YearMonth.parse(fields[0]), directory.resolve(fields[1]));
+        }
+        return ledger;
+    }
+
+    /* ------------------------------------------------------------------
+       Finding segments
+       ------------------------------------------------------------------ */
+
+    /**
+     * Every segment, oldest month first.
+     */
+    synchronized List<Path> allSegments() {
+        return new ArrayList<>(segments.values());
+    }
+
+    /**
+     * Segments of the months that overlap {@code [from … to]}, oldest month first.
+     */
+    synchronized List<Path> segmentsOverlapping(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return new ArrayList<>();
+        return new ArrayList<>(segments.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values());
+    }
+
+    /**
+     * Segment that rows dated {@code date} are written to – created (and added to the
+     * manifest) the first time its month is needed.
+     */
+    synchronized Path segmentFor(LocalDate date) throws IOException {
+        YearMonth month = YearMonth.from(date);
+        Path segment = segments.get(month);
+        if (segment != null) return segment;
+
+        segment = directory.resolve(month + ".csv");
+        if (!Files.exists(segment)) Files.createFile(segment);
+        segments.put(month, segment);
+        writeManifest();
+        return segment;
+    }
+
+    /* ------------------------------------------------------------------
+       Splitting a single data file
+       ------------------------------------------------------------------ */
+
+    /**
+     * Copies every row of {@code source} (plain, gzip or checksummed) into monthly
+     * segments under {@code directory} and writes the manifest. Malformed rows are skipped.
+     */
+    static SplitSummary split(Path source, Path directory) throws IOException {
+        if (isSegmented(directory)) throw new IOException(directory + " already holds a segmented ledger");
+        Files.createDirectories(directory);
+
+        SegmentedLedger ledger = new SegmentedLedger(directory);
+        HashMap<YearMonth, BufferedWriter> writers = new HashMap<>();
+        long[] counts = new long[2];                            // rows, skipped
+        StringBuilder line = new StringBuilder(96);
+        try {
+            CompressedLedger.forEachBlock(source, 8 << 20, block -> {
+                TransactionLoader.ParsedChunk parsed = new TransactionLoader.ParsedChunk();
+                TransactionLoader.parseLines(block, parsed, null);
+                try {
+                    for (Transaction transaction : parsed.transactions) {
+                        YearMonth month = YearMonth.from(transaction.getDate());
+                        BufferedWriter writer = writers.get(month);
+                        if (writer == null) {
+                            Path segment = directory.resolve(month + ".csv");
+                            writer = Files.newBufferedWriter(segment, StandardCharsets.UTF_8);
+                            writers.put(month, writer);
+                            ledger.segments.put(month, segment);
+                        }
+                        line.setLength(0);
+                        writer.append(RecordEncoder.append(transaction, line));
+                        writer.newLine();
+                    }
+                } catch (IOException ioException) {
+                    throw new UncheckedIOException(ioException);
+                }
+                counts[0] += parsed.transactions.size();
+                counts[1] += parsed.rejected.size();
+            });
+        } catch (UncheckedIOException writeFailed) {
+            throw writeFailed.getCause();
+        } finally {
+            for (BufferedWriter writer : writers.values()) writer.close();
+        }
+
+        ledger.writeManifest();
+        return new SplitSummary(counts[0], counts[1], writers.size());
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    /**
+     * Writes the manifest to a temp file and swaps it in. Caller holds the lock
+     * (or owns the ledger exclusively).
+     */
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (Map.Entry<YearMonth, Path> segment : segments.entrySet()) {
+            manifest.append(segment.getKey()).append('|')
+                    .append(segment.getValue().getFileName()).append(System.lineSeparator());
+        }
+        Path manifestFile = directory.resolve(MANIFEST_FILE_NAME);
+        Path tempFile = directory.resolve(MANIFEST_FILE_NAME + ".tmp");
+        Files.writeString(tempFile, manifest, StandardCharsets.UTF_8);
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
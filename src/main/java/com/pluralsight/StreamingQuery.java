@@ -0,0 +1,227 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Runs ledger queries straight over a data file without loading it into memory.
+ * <p>
+ * The file is read in newline-aligned blocks and every block is filtered and dropped
+ * before the next one is read, so memory stays bounded no matter how large the
+ * file is. Gzip-compressed archives are inflated block by block on the fly.
+ * Newest-first output uses an external merge sort: matching rows are collected
+ * into sorted runs, runs that do not fit in memory are spilled to temp files, and
+ * the runs are merged back with a priority queue.
+ */
+final class StreamingQuery {
+
+    /* ------------------------------------------------------------------
+       Tuning constants
+       ------------------------------------------------------------------ */
+
+    /**
+     * Bytes of the data file parsed at a time.
+     */
+    private static final long BLOCK_BYTES = 8L << 20;          // 8 MiB
+
+    /**
+     * Matching rows kept in memory before a sorted run is spilled to disk.
+     */
+    private static final int RUN_ROWS = 250_000;
+
+    private StreamingQuery() {
+    }
+
+    /* ------------------------------------------------------------------
+       Queries
+       ------------------------------------------------------------------ */
+
+    /**
+     * Calls {@code action} for every row of {@code file} accepted by {@code filter},
+     * in file order, and returns how many rows matched. Malformed rows and damaged batches
+     * are skipped, and like a load the query stops in front of a batch that is not
+     * complete yet.
+     */
+    static long forEachInFileOrder(Path file, Predicate<Transaction> filter, Consumer<Transaction> action)
+            throws IOException {
+        long[] matches = {0};
+        if (CompressedLedger.isCompressed(file) || WriteAheadLog.isLog(file)) {
+            CompressedLedger.forEachBlock(file, (int) BLOCK_BYTES,
+                    block -> matches[0] += filterBlock(block, filter, action));
+            return matches[0];
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long committedEnd = CommitMarker.committedEnd(channel, 0, channel.size());
+            long blockStart = 0;
+            while (blockStart < committedEnd) {
+                long blockEnd = TransactionLoader.nextLineStart(channel,
+                        Math.min(committedEnd, blockStart + BLOCK_BYTES), committedEnd);
+                blockEnd = CommitMarker.lineStartOutsideBatch(channel, blockStart, blockEnd, committedEnd);
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, blockStart, blockEnd - blockStart);
+                matches[0] += filterBlock(block, filter, action);
+                blockStart = blockEnd;
+            }
+        }
+        return matches[0];
+    }
+
+    /**
+     * Parses one block of whole lines and passes the matching rows on; returns the match count.
+     */
+    private static long filterBlock(ByteBuffer block, Predicate<Transaction> filter, Consumer<Transaction> action) {
+        TransactionLoader.ParsedChunk parsed = new TransactionLoader.ParsedChunk();
+        TransactionLoader.parseLines(block, parsed, null);      // no pooling: memory must stay bounded
+
+        long matches = 0;
+        for (Transaction transaction : parsed.transactions) {
+            if (filter.test(transaction)) {
+                action.accept(transaction);
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Like {@link #forEachInFileOrder} but delivers the matches in
+     * {@link Transaction#NEWEST_FIRST} order. Rows with the same date and time keep
+     * their file order, exactly like the in-memory (stable) sort.
+     */
+    static long forEachNewestFirst(Path file, Predicate<Transaction> filter, Consumer<Transaction> action)
+            throws IOException {
+        ArrayList<Transaction> run = new ArrayList<>();
+        List<Path> runFiles = new ArrayList<>();
+        try {
+            long matches;
+            try {
+                matches = forEachInFileOrder(file, filter, transaction -> {
+                    run.add(transaction);
+                    if (run.size() == RUN_ROWS) {
+                        runFiles.add(spillRun(run));
+                        run.clear();
+                    }
+                });
+            } catch (UncheckedIOException spillFailed) {
+                throw spillFailed.getCause();
+            }
+
+            run.sort(Transaction.NEWEST_FIRST);
+            if (runFiles.isEmpty()) {
+                run.forEach(action);                    // everything fit in memory
+            } else {
+                if (!run.isEmpty()) runFiles.add(spillRun(run));
+                run.clear();
+                mergeRuns(runFiles, action);
+            }
+            return matches;
+        } finally {
+            for (Path runFile : runFiles) {
+                Files.deleteIfExists(runFile);
+            }
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       External merge sort
+       ------------------------------------------------------------------ */
+
+    /**
+     * Sorts {@code run} newest first and writes it to a temp file in a compact binary form.
+     */
+    private static Path spillRun(ArrayList<Transaction> run) {
+        try {
+            run.sort(Transaction.NEWEST_FIRST);
+            Path runFile = Files.createTempFile("ledger-run", ".bin");
+            runFile.toFile().deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(runFile), 1 << 16))) {
+                for (Transaction transaction : run) {
+                    out.writeLong(transaction.getSortKey());
+                    out.writeUTF(transaction.getDescription());
+                    out.writeUTF(transaction.getVendor());
+                    out.writeLong(transaction.getAmountCents());
+                }
+            }
+            return runFile;
+        } catch (IOException ioException) {
+            throw new UncheckedIOException(ioException);
+        }
+    }
+
+    /**
+     * K-way merge of the sorted run files. Ties go to the earlier run, which holds
+     * earlier file rows, so the merge is stable.
+     */
+    private static void mergeRuns(List<Path> runFiles, Consumer<Transaction> action) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runFiles.size());
+        PriorityQueue<RunReader> heads = new PriorityQueue<>((first, second) -> {
+            int order = Transaction.NEWEST_FIRST.compare(first.head, second.head);
+            return order != 0 ? order : Integer.compare(first.runIndex, second.runIndex);
+        });
+        try {
+            for (int i = 0; i < runFiles.size(); i++) {
+                RunReader reader = new RunReader(runFiles.get(i), i);
+                readers.add(reader);
+                if (reader.advance()) heads.add(reader);
+            }
+            while (!heads.isEmpty()) {
+                RunReader next = heads.poll();
+                action.accept(next.head);
+                if (next.advance()) heads.add(next);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.in.close();
+            }
+        }
+    }
+
+    /**
+     * Sequential reader over one spilled run; {@code head} is its current row.
+     */
+    private static final class RunReader {
+        final DataInputStream in;
+        final int runIndex;
+        Transaction head;
+
+        RunReader(Path runFile, int runIndex) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(runFile), 1 << 16));
+            this.runIndex = runIndex;
+        }
+
+        /**
+         * Reads the next row into {@code head}; returns false at the end of the run.
+         */
+        boolean advance() throws IOException {
+            try {
+                long sortKey = in.readLong();
+                String description = in.readUTF();
+                String vendor = in.readUTF();
+                long amountCents = in.readLong();
+                head = new Transaction(Transaction.dateOf(sortKey), Transaction.timeOf(sortKey),
+                        description, vendor, amountCents);
+                return true;
+            } catch (EOFException endOfRun) {
+                head = null;
+                return false;
+            }
+        }
+    }
+}
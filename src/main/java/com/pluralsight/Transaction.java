@@ -2,7 +2,7 @@ package com.pluralsight;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
 
 /**
  * One financial record: deposit (positive) or payment (negative).
@@ -13,6 +13,18 @@ import java.time.format.DateTimeFormatter;
 
 public class Transaction {
 
+    /**
+     * Seconds per day – a sort key is {@code epochDay * SECONDS_PER_DAY + secondOfDay}.
+     */
+    static final int SECONDS_PER_DAY = 86_400;
+
+    /**
+     * Ledger order: later date first; if same date, later time first.
+     * One long comparison of the sort keys.
+     */
+    public static final Comparator<Transaction> NEWEST_FIRST =
+            (first, second) -> Long.compare(second.sortKey, first.sortKey);
+
     /* ------------------------------------------------------------------
        Data fields
        ------------------------------------------------------------------ */
@@ -20,7 +32,8 @@ public class Transaction {
     private final LocalTime time;        // time of day
     private final String description; // user-supplied description
     private final String vendor;      // where the money came from / went to
-    private final double amount;      // positive for deposit, negative for payment
+    private final long amountCents;   // whole cents: positive for deposit, negative for payment
+    private final long sortKey;       // date and time as one number, see sortKey(long, int)
 
     /* ------------------------------------------------------------------
        Constructor
@@ -29,13 +42,14 @@ public class Transaction {
                        LocalTime time,
                        String description,
                        String vendor,
-                       double amount) {
+                       long amountCents) {
 
         this.date = date;
         this.time = time;
         this.description = description;
         this.vendor = vendor;
-        this.amount = amount;
+        this.amountCents = amountCents;
+        this.sortKey = sortKey(date.toEpochDay(), time.toSecondOfDay());
     }
 
     /* ------------------------------------------------------------------
@@ -57,8 +71,52 @@ public class Transaction {
         return vendor;
     }
 
-    public double getAmount() {
-        return amount;
+    /**
+     * Amount in whole cents (-425 for a payment of 4.25), so sums and comparisons are exact.
+     */
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    /**
+     * Date and time as seconds since 1970-01-01 00:00 – a later transaction always has
+     * the larger key, so ordering and date ranges need only long comparisons.
+     */
+    public long getSortKey() {
+        return sortKey;
+    }
+
+    /* ------------------------------------------------------------------
+       Sort keys
+       ------------------------------------------------------------------ */
+
+    /**
+     * The sort key of a date and time (fractions of a second are not stored, so not counted).
+     */
+    static long sortKey(long epochDay, int secondOfDay) {
+        return epochDay * SECONDS_PER_DAY + secondOfDay;
+    }
+
+    /**
+     * First sort key of day {@code epochDay}, 00:00:00.
+     */
+    static long firstKeyOfDay(long epochDay) {
+        return epochDay * SECONDS_PER_DAY;
+    }
+
+    /**
+     * Last sort key of day {@code epochDay}, 23:59:59.
+     */
+    static long lastKeyOfDay(long epochDay) {
+        return epochDay * SECONDS_PER_DAY + SECONDS_PER_DAY - 1;
+    }
+
+    static LocalDate dateOf(long sortKey) {
+        return LocalDate.ofEpochDay(Math.floorDiv(sortKey, SECONDS_PER_DAY));
+    }
+
+    static LocalTime timeOf(long sortKey) {
+        return LocalTime.ofSecondOfDay(Math.floorMod(sortKey, SECONDS_PER_DAY));
     }
 
     /* ------------------------------------------------------------------
@@ -71,15 +129,7 @@ public class Transaction {
      */
     @Override
     public String toString() {
-        DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        DateTimeFormatter timeFmt = DateTimeFormatter.ofPattern("HH:mm:ss");
-
-        return String.format("%s|%s|%s|%s|%.2f",
-                date.format(dateFmt),
-                time.format(timeFmt),
-                description,
-                vendor,
-                amount);
+        return RecordEncoder.line(this);
     }
 }
 
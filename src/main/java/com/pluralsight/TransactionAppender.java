@@ -0,0 +1,394 @@
+package com.pluralsight;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Long-lived append channel for the data file, served by one writer thread.
+ * <p>
+ * Callers only encode their records – straight into pooled direct buffers – and put
+ * them on a bounded lock-free queue; the "ledger-writer" thread takes everything that
+ * arrived within the configured window, hands all those buffers to one gathering
+ * write (no joining copy, no copy into a temporary direct buffer) and syncs according
+ * to the {@link Durability} policy. Every submission gets a future that completes once
+ * its records are on disk, so a slow disk never stalls the caller. {@link #close}
+ * drains the queue first.
+ */
+final class TransactionAppender implements Closeable {
+
+    /* ------------------------------------------------------------------
+       Durability policy
+       ------------------------------------------------------------------ */
+
+    /**
+     * When written records are forced to disk (fsync).
+     */
+    record Durability(Mode mode, long interval) {
+
+        enum Mode { EVERY_RECORD, EVERY_N_RECORDS, EVERY_N_MILLIS }
+
+        static Durability everyRecord() {
+            return new Durability(Mode.EVERY_RECORD, 1);
+        }
+
+        static Durability everyRecords(long count) {
+            return new Durability(Mode.EVERY_N_RECORDS, count);
+        }
+
+        static Durability everyMillis(long millis) {
+            return new Durability(Mode.EVERY_N_MILLIS, millis);
+        }
+
+        /**
+         * Parses "record", "records:N" or "millis:N".
+         */
+        static Durability parse(String text) {
+            String[] parts = text.trim().toLowerCase().split(":");
+            if (parts.length == 1 && parts[0].equals("record")) return everyRecord();
+            if (parts.length == 2 && !parts[1].isEmpty() && parts[1].chars().allMatch(Character::isDigit)) {
+                long interval = Long.parseLong(parts[1]);
+                if (interval > 0 && parts[0].equals("records")) return everyRecords(interval);
+                if (interval > 0 && parts[0].equals("millis")) return everyMillis(interval);
+            }
+            throw new IllegalArgumentException("Unknown durability policy: " + text);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       State
+       ------------------------------------------------------------------ */
+
+    /**
+     * At most this many submissions wait for the writer; further callers block until
+     * it catches up, so memory stays bounded when the disk cannot keep up.
+     */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /**
+     * Encoded records from one submission (pooled buffers, ready to be read) and the
+     * future that reports them durable.
+     */
+    private record PendingWrite(ByteBuffer[] buffers, int recordCount, CompletableFuture<Void> durable) {
+    }
+
+    private final FileChannel channel;
+    private final boolean compressed;
+    private final boolean checksummed;
+    private final long windowNanos;
+    private final Durability durability;
+
+    private final ConcurrentLinkedQueue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore freeSlots = new Semaphore(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closing;
+
+    // Submissions queued so far / handled (written or failed) by the writer, for awaitWritten().
+    private final AtomicLong submitted = new AtomicLong();
+    private final Object handledMonitor = new Object();
+    private long handled;                                       // guarded by handledMonitor
+
+    // Only touched by the writer thread.
+    private final ArrayList<CompletableFuture<Void>> awaitingSync = new ArrayList<>();
+    private long unsyncedRecords;
+    private long lastSyncNanos = System.nanoTime();
+
+    /**
+     * @param dataFile     file to append to (created if missing)
+     * @param compressed   write every batch as one gzip member (see {@link CompressedLedger})
+     * @param checksummed  frame every record with its length and CRC (see {@link WriteAheadLog})
+     * @param windowMillis how long a batch stays open for more records
+     * @param durability   when to force written records to disk
+     */
+    TransactionAppender(Path dataFile, boolean compressed, boolean checksummed, long windowMillis,
+                        Durability durability) throws IOException {
+        this.channel = FileChannel.open(dataFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.compressed = compressed;
+        this.checksummed = checksummed;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.durability = durability;
+
+        writer = new Thread(this::writeLoop, "ledger-writer");
+        writer.setDaemon(true);                 // close() drains the queue on a normal exit
+        writer.start();
+    }
+
+    /* ------------------------------------------------------------------
+       Submitting
+       ------------------------------------------------------------------ */
+
+    /**
+     * Queues many records at once: they are encoded together and always land in the
+     * same batch, so a bulk import costs a single (gathering) write. The future completes
+     * once they are on disk as the durability policy defines it, or fails if they could
+     * not be written.
+     */
+    CompletableFuture<Void> submitAll(List<Transaction> rows) {
+        if (rows.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (closing) return CompletableFuture.failedFuture(new IOException("Appender is closed"));
+        return enqueue(encode(rows, checksummed), rows.size());
+    }
+
+    /**
+     * Queues records that must become visible together or not at all: one checksummed
+     * record, one gzip member, or plain lines behind a {@link CommitMarker}.
+     * Fails right away if the batch is too large to be written atomically.
+     */
+    CompletableFuture<Void> submitBatch(List<Transaction> rows) {
+        if (rows.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (closing) return CompletableFuture.failedFuture(new IOException("Appender is closed"));
+
+        ByteBuffer[] buffers;
+        try {
+            buffers = compressed ? encode(rows, false)                  // written as one member
+                    : encodeBatch(rows, checksummed);
+        } catch (IllegalArgumentException tooLarge) {
+            return CompletableFuture.failedFuture(new IOException(tooLarge.getMessage()));
+        }
+        return enqueue(buffers, rows.size());
+    }
+
+    private CompletableFuture<Void> enqueue(ByteBuffer[] buffers, int recordCount) {
+        PendingWrite write = new PendingWrite(buffers, recordCount, new CompletableFuture<>());
+        freeSlots.acquireUninterruptibly();
+        submitted.incrementAndGet();
+        queue.add(write);
+        LockSupport.unpark(writer);
+        return write.durable();
+    }
+
+    /**
+     * Records as the bytes that go into the file – plain lines or checksummed records –
+     * encoded straight into pooled direct buffers, flipped for reading. A record never
+     * spans two buffers. The buffers go back to {@link DirectBufferPool#SHARED} once written.
+     */
+    static ByteBuffer[] encode(List<Transaction> rows, boolean checksummed) {
+        String lineSeparator = System.lineSeparator();
+        int headerBytes = checksummed ? WriteAheadLog.RECORD_HEADER_BYTES : 0;
+        CRC32 crc = checksummed ? new CRC32() : null;
+
+        ArrayList<ByteBuffer> buffers = new ArrayList<>();
+        ByteBuffer current = DirectBufferPool.SHARED.acquire();
+        for (Transaction row : rows) {
+            int maxBytes = headerBytes + RecordEncoder.maxBytes(row) + lineSeparator.length();
+            if (current.remaining() < maxBytes) {
+                if (current.position() > 0) {
+                    buffers.add(current.flip());
+                } else {
+                    DirectBufferPool.SHARED.release(current);
+                }
+                current = DirectBufferPool.SHARED.acquire(maxBytes);
+            }
+            int recordStart = current.position();
+            current.position(recordStart + headerBytes);
+            RecordEncoder.put(row, current);
+            RecordEncoder.putUtf8(lineSeparator, current);
+            if (checksummed) WriteAheadLog.finishFrame(current, recordStart, crc);
+        }
+        buffers.add(current.flip());
+        return buffers.toArray(new ByteBuffer[0]);
+    }
+
+    /**
+     * An atomic batch for a plain or checksummed file: the rows as plain lines, behind one
+     * small buffer with the {@link CommitMarker} or record header that covers all of them.
+     */
+    private static ByteBuffer[] encodeBatch(List<Transaction> rows, boolean checksummed) {
+        ByteBuffer[] lines = encode(rows, false);
+        long batchBytes = 0;
+        CRC32 crc = new CRC32();
+        for (ByteBuffer buffer : lines) {
+            batchBytes += buffer.remaining();
+            crc.update(buffer.duplicate());
+        }
+
+        byte[] head;
+        try {
+            head = checksummed ? WriteAheadLog.recordHeader(batchBytes, crc)
+                    : CommitMarker.marker(rows.size(), batchBytes, crc);
+        } catch (IllegalArgumentException tooLarge) {
+            DirectBufferPool.SHARED.release(lines);
+            throw tooLarge;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[lines.length + 1];
+        buffers[0] = DirectBufferPool.SHARED.acquire(head.length).put(head).flip();
+        System.arraycopy(lines, 0, buffers, 1, lines.length);
+        return buffers;
+    }
+
+    /* ------------------------------------------------------------------
+       Writer thread
+       ------------------------------------------------------------------ */
+
+    private void writeLoop() {
+        ArrayList<PendingWrite> batch = new ArrayList<>();
+        while (true) {
+            if (queue.isEmpty()) {
+                if (closing) break;
+                waitForWork();
+                continue;
+            }
+
+            // Leave the batch open for the window so records arriving together share one write.
+            long deadline = System.nanoTime() + windowNanos;
+            for (long left = windowNanos; left > 0 && !closing; left = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, left);
+            }
+
+            PendingWrite next;
+            while ((next = queue.poll()) != null) batch.add(next);
+            freeSlots.release(batch.size());
+            writeBatch(batch);
+            synchronized (handledMonitor) {
+                handled += batch.size();
+                handledMonitor.notifyAll();
+            }
+            batch.clear();
+        }
+
+        sync();                                                 // everything left, whatever the policy
+        try {
+            channel.close();
+        } catch (IOException ioException) {
+            System.out.println("Failed to close data file: " + ioException.getMessage());
+        }
+
+        // Submissions that raced with close() are refused rather than left hanging.
+        PendingWrite late;
+        while ((late = queue.poll()) != null) late.durable().completeExceptionally(new IOException("Appender is closed"));
+    }
+
+    /**
+     * Parks until new work arrives – or, with a time-based policy, until the next sync is due.
+     */
+    private void waitForWork() {
+        if (durability.mode() != Durability.Mode.EVERY_N_MILLIS || awaitingSync.isEmpty()) {
+            LockSupport.park(this);
+            return;
+        }
+        long untilSync = lastSyncNanos + TimeUnit.MILLISECONDS.toNanos(durability.interval()) - System.nanoTime();
+        if (untilSync <= 0) {
+            sync();
+        } else {
+            LockSupport.parkNanos(this, untilSync);
+        }
+    }
+
+    /**
+     * Writes the batch with one gathering write (normally one system call), then syncs
+     * if the policy says so. Compressed files need the bytes joined for the deflater.
+     */
+    private void writeBatch(List<PendingWrite> batch) {
+        ArrayList<ByteBuffer> buffers = new ArrayList<>();
+        int recordCount = 0;
+        for (PendingWrite write : batch) {
+            Collections.addAll(buffers, write.buffers());
+            recordCount += write.recordCount();
+        }
+
+        try {
+            ByteBuffer[] sources = buffers.toArray(new ByteBuffer[0]);
+            if (compressed) {
+                byte[] text = joined(sources);
+                sources = new ByteBuffer[]{ByteBuffer.wrap(CompressedLedger.compressBlock(text, 0, text.length))};
+            }
+            long remaining = 0;
+            for (ByteBuffer source : sources) remaining += source.remaining();
+            while (remaining > 0) remaining -= channel.write(sources);
+        } catch (IOException ioException) {
+            for (PendingWrite write : batch) write.durable().completeExceptionally(ioException);
+            return;
+        } finally {
+            DirectBufferPool.SHARED.release(buffers.toArray(new ByteBuffer[0]));
+        }
+
+        for (PendingWrite write : batch) awaitingSync.add(write.durable());
+        unsyncedRecords += recordCount;
+        boolean syncNow = switch (durability.mode()) {
+            case EVERY_RECORD -> true;
+            case EVERY_N_RECORDS -> unsyncedRecords >= durability.interval();
+            case EVERY_N_MILLIS -> System.nanoTime() - lastSyncNanos >= TimeUnit.MILLISECONDS.toNanos(durability.interval());
+        };
+        if (syncNow) sync();
+    }
+
+    private static byte[] joined(ByteBuffer[] buffers) {
+        int length = 0;
+        for (ByteBuffer buffer : buffers) length += buffer.remaining();
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (ByteBuffer buffer : buffers) {
+            buffer.get(buffer.position(), bytes, offset, buffer.remaining());
+            offset += buffer.remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Forces written records to disk and completes their futures.
+     */
+    private void sync() {
+        if (awaitingSync.isEmpty()) return;
+        try {
+            channel.force(false);
+            for (CompletableFuture<Void> durable : awaitingSync) durable.complete(null);
+        } catch (IOException ioException) {
+            for (CompletableFuture<Void> durable : awaitingSync) durable.completeExceptionally(ioException);
+        }
+        awaitingSync.clear();
+        unsyncedRecords = 0;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /* ------------------------------------------------------------------
+       Closing
+       ------------------------------------------------------------------ */
+
+    /**
+     * Waits until everything submitted before this call has been written to the file
+     * (not necessarily synced), so that readers of the file see it.
+     */
+    void awaitWritten() throws InterruptedException {
+        long target = submitted.get();
+        synchronized (handledMonitor) {
+            while (handled < target && writer.isAlive()) handledMonitor.wait(100);
+        }
+    }
+
+    /**
+     * Number of submissions the writer has not picked up yet.
+     */
+    int pendingWrites() {
+        return QUEUE_CAPACITY - freeSlots.availablePermits();
+    }
+
+    /**
+     * Stops taking new records, waits until the writer has written and synced
+     * everything already queued, then closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while draining the write queue");
+        }
+    }
+}
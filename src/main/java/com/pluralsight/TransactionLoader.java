@@ -0,0 +1,425 @@
+package com.pluralsight;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Parallel reader for the pipe-delimited data file.
+ * <p>
+ * The file is cut into byte ranges that always start right after a line break,
+ * every range is memory-mapped and parsed on the common {@link ForkJoinPool},
+ * and the per-range results are joined back together in original file order – or,
+ * for the startup load, handed on one range at a time (see {@link ChunkMerger}).
+ */
+final class TransactionLoader {
+
+    /* ------------------------------------------------------------------
+       Tuning constants
+       ------------------------------------------------------------------ */
+
+    /**
+     * Files smaller than this are parsed on the calling thread – not worth forking.
+     */
+    private static final long MIN_CHUNK_BYTES = 1L << 20;      // 1 MiB
+
+    /**
+     * Upper bound for one range so a single chunk always fits in one int-indexed mapping.
+     */
+    private static final long MAX_CHUNK_BYTES = 64L << 20;     // 64 MiB
+
+    /**
+     * Upper bound for one range when its rows are handed on chunk by chunk, so the
+     * chunks parsed ahead hold only a few MB of rows each.
+     */
+    private static final long MAX_STREAMED_CHUNK_BYTES = 4L << 20;     // 4 MiB
+
+    /**
+     * How many ranges per core – a few extra keeps all cores busy near the end.
+     */
+    private static final int CHUNKS_PER_CORE = 4;
+
+    /**
+     * How many chunks are parsed ahead of the one being joined – two per pool thread,
+     * so one slow chunk does not leave the others idle.
+     */
+    private static final int MAX_CHUNKS_PARSING = 2 * ForkJoinPool.getCommonPoolParallelism();
+
+    /**
+     * date | time | description | vendor | amount
+     */
+    private static final int FIELD_COUNT = 5;
+
+    private TransactionLoader() {
+    }
+
+    /* ------------------------------------------------------------------
+       Public entry point
+       ------------------------------------------------------------------ */
+
+    /**
+     * One line that failed validation (line numbers start at 1).
+     */
+    record RejectedRow(long lineNumber, String reason, String text) {
+    }
+
+    /**
+     * Rows parsed from a byte range of the file, the rows that were rejected, and
+     * the offset / line count where that range ended.
+     */
+    record LoadedRange(List<Transaction> transactions, List<RejectedRow> rejected, long endOffset, long endLine) {
+    }
+
+    /**
+     * Parses every line in bytes {@code [fromOffset, toOffset)} of {@code file}, in file order.
+     * {@code fromOffset} must be the start of line number {@code firstLine + 1};
+     * {@code toOffset} is clamped to the file size. The byte count of every finished
+     * chunk is added to {@code progress}.
+     * <p>
+     * Every line is checked for the canonical shape without using exceptions and bad
+     * lines are returned in {@link LoadedRange#rejected()} instead of stopping the load.
+     * Dates, times and texts are shared through {@code pool} (may be null for no pooling).
+     */
+    static LoadedRange load(Path file, long fromOffset, long toOffset, long firstLine,
+                            ValuePool pool, AtomicLong progress) throws IOException {
+        return load(file, fromOffset, toOffset, firstLine, pool, progress, null);
+    }
+
+    /**
+     * Like {@link #load(Path, long, long, long, ValuePool, AtomicLong)}, but the
+     * rows go to {@code rowSink} one parsed chunk at a time, in file order, instead of
+     * into {@link LoadedRange#transactions()} (which stays empty). The sink runs on the
+     * calling thread; the chunk's list is not used again afterwards.
+     */
+    static LoadedRange load(Path file, long fromOffset, long toOffset, long firstLine,
+                            ValuePool pool, AtomicLong progress, Consumer<List<Transaction>> rowSink)
+            throws IOException {
+        if (CompressedLedger.isCompressed(file)) {
+            return CompressedLedger.load(file, fromOffset, toOffset, firstLine, pool, progress, rowSink);
+        }
+        if (WriteAheadLog.isLog(file)) {
+            return WriteAheadLog.load(file, fromOffset, toOffset, firstLine, pool, progress, rowSink);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long endOffset = Math.min(toOffset, channel.size());
+            if (fromOffset >= endOffset) {
+                return new LoadedRange(new ArrayList<>(), new ArrayList<>(), endOffset, firstLine);
+            }
+            long[] boundaries = splitIntoChunks(channel, fromOffset, endOffset,
+                    rowSink == null ? MAX_CHUNK_BYTES : MAX_STREAMED_CHUNK_BYTES);
+
+            List<Callable<ParsedChunk>> chunkTasks = new ArrayList<>();
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                chunkTasks.add(() -> parseChunk(channel, start, end, pool, progress));
+            }
+            return runChunks(chunkTasks, firstLine, endOffset, rowSink);
+        }
+    }
+
+    /**
+     * Runs the chunk tasks on the common pool and joins their results in task order
+     * through a {@link ChunkMerger}. A single task is simply run on the calling thread.
+     */
+    static LoadedRange runChunks(List<Callable<ParsedChunk>> chunkTasks, long firstLine, long endOffset,
+                                 Consumer<List<Transaction>> rowSink) throws IOException {
+        ChunkMerger merger = new ChunkMerger(firstLine, rowSink);
+        if (chunkTasks.size() == 1) {
+            // Small range – one chunk, no need to involve the pool.
+            FutureTask<ParsedChunk> onlyChunk = new FutureTask<>(chunkTasks.get(0));
+            onlyChunk.run();
+            merger.add(joinChunk(onlyChunk));
+        } else {
+            for (Callable<ParsedChunk> chunkTask : chunkTasks) merger.submit(chunkTask);
+        }
+        return merger.finish(endOffset);
+    }
+
+    /**
+     * Joins parsed chunks back together in file order; chunk-local line indexes become
+     * file line numbers. Without a row sink the rows are collected into one list. With
+     * one, each chunk's rows are handed on as soon as every earlier chunk is done, and at
+     * most {@link #MAX_CHUNKS_PARSING} chunks are parsed ahead – so a load never holds
+     * more than those chunks' rows at a time.
+     */
+    static final class ChunkMerger {
+        private final Consumer<List<Transaction>> rowSink;     // null: collect the rows
+        private final ArrayDeque<Future<ParsedChunk>> parsing = new ArrayDeque<>();
+        private final ArrayList<Transaction> merged = new ArrayList<>();
+        private final ArrayList<RejectedRow> rejected = new ArrayList<>();
+        private long linesBefore;
+
+        ChunkMerger(long firstLine, Consumer<List<Transaction>> rowSink) {
+            this.linesBefore = firstLine;
+            this.rowSink = rowSink;
+        }
+
+        /**
+         * Starts parsing the next chunk on the common pool, first joining the oldest one
+         * if enough are under way already.
+         */
+        void submit(Callable<ParsedChunk> chunkTask) throws IOException {
+            if (parsing.size() >= MAX_CHUNKS_PARSING) add(joinChunk(parsing.remove()));
+            parsing.add(ForkJoinPool.commonPool().submit(chunkTask));
+        }
+
+        /**
+         * Adds the next chunk in file order, parsed by the caller; only valid while no
+         * submitted chunk is still pending.
+         */
+        void add(ParsedChunk chunk) {
+            for (RejectedRow row : chunk.rejected) {
+                rejected.add(new RejectedRow(linesBefore + row.lineNumber(), row.reason(), row.text()));
+            }
+            linesBefore += chunk.lineCount;
+            if (rowSink == null) {
+                merged.addAll(chunk.transactions);
+            } else if (!chunk.transactions.isEmpty()) {
+                rowSink.accept(chunk.transactions);
+            }
+        }
+
+        /**
+         * Waits for the chunks still being parsed and returns the whole range.
+         */
+        LoadedRange finish(long endOffset) throws IOException {
+            while (!parsing.isEmpty()) add(joinChunk(parsing.remove()));
+            return new LoadedRange(merged, rejected, endOffset, linesBefore);
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Splitting the file into newline-aligned ranges
+       ------------------------------------------------------------------ */
+
+    /**
+     * Returns ascending offsets {@code [start, b1, b2, …, end]}. Every inner
+     * boundary sits directly after a '\n', so no line is split between ranges,
+     * and outside any atomic batch, so every batch can be checked as a whole.
+     * No range is longer than {@code maxChunkBytes} (plus the rest of a line or batch).
+     */
+    private static long[] splitIntoChunks(FileChannel channel, long start, long end, long maxChunkBytes)
+            throws IOException {
+        long length = end - start;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        long chunkCount = Math.max((long) cores * CHUNKS_PER_CORE, (length + maxChunkBytes - 1) / maxChunkBytes);
+        long targetChunkSize = Math.max(MIN_CHUNK_BYTES, (length + chunkCount - 1) / chunkCount);
+
+        ArrayList<Long> boundaries = new ArrayList<>();
+        boundaries.add(start);
+
+        long position = start + targetChunkSize;
+        while (position < end) {
+            long lineStart = CommitMarker.lineStartOutsideBatch(channel, boundaries.get(boundaries.size() - 1),
+                    nextLineStart(channel, position, end), end);
+            if (lineStart >= end) break;
+            boundaries.add(lineStart);
+            position = lineStart + targetChunkSize;
+        }
+        boundaries.add(end);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Scans forward from {@code position} and returns the offset just after the next '\n'
+     * (or {@code end} if the rest of the file has no line break).
+     */
+    static long nextLineStart(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        while (position < end) {
+            probe.clear();
+            int bytesRead = channel.read(probe, position);
+            if (bytesRead <= 0) break;
+            for (int i = 0; i < bytesRead; i++) {
+                if (probe.get(i) == '\n') return position + i + 1;
+            }
+            position += bytesRead;
+        }
+        return end;
+    }
+
+    /* ------------------------------------------------------------------
+       Parsing one range
+       ------------------------------------------------------------------ */
+
+    /**
+     * Everything parsed from one range; rejected line numbers are 1-based within the range.
+     */
+    static final class ParsedChunk {
+        final ArrayList<Transaction> transactions = new ArrayList<>();
+        final ArrayList<RejectedRow> rejected = new ArrayList<>();
+        long lineCount;
+    }
+
+    /**
+     * Maps bytes {@code [start, end)} read-only and turns every line into a Transaction.
+     */
+    private static ParsedChunk parseChunk(FileChannel channel, long start, long end,
+                                          ValuePool pool, AtomicLong progress) throws IOException {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ParsedChunk chunk = new ParsedChunk();
+        parseLines(mapped, chunk, pool);
+        progress.addAndGet(end - start);
+        return chunk;
+    }
+
+    /**
+     * Parses every line between the buffer's position and limit into {@code out}.
+     * Fields are located by scanning the bytes for '|' and '\n'; only the description
+     * and vendor Strings that end up in the Transaction are created.
+     * A blank last line (text ending in '\n') is skipped, just like BufferedReader.readLine.
+     * Malformed lines and damaged batches go to {@code out.rejected}.
+     */
+    static void parseLines(ByteBuffer bytes, ParsedChunk out, ValuePool pool) {
+        ByteField field = new ByteField(bytes);          // reused for every date/time/amount field
+        byte[] textScratch = new byte[256];              // reused for description/vendor bytes
+        int[] fieldStarts = new int[FIELD_COUNT];
+
+        int limit = bytes.limit();
+        int lineStart = bytes.position();
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes.get(lineEnd) != '\n') lineEnd++;
+            int nextLine = lineEnd + 1;
+            if (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') lineEnd--;   // Windows line ending
+            textScratch = ByteField.ensureCapacity(textScratch, lineEnd - lineStart);
+            out.lineCount++;
+            if (CommitMarker.isMarker(bytes, lineStart, lineEnd)) {       // batch header, not a row
+                CommitMarker.Batch batch = CommitMarker.checkBatch(bytes, lineStart, lineEnd, nextLine);
+                if (batch != null && !batch.intact()) {
+                    rejectBatch(bytes, lineStart, batch.end(), out, textScratch);
+                    lineStart = batch.end();
+                    continue;
+                }
+                lineStart = nextLine;
+                continue;
+            }
+
+            // fieldStarts[i] = offset of the first byte of field i
+            int found = 0;
+            fieldStarts[found++] = lineStart;
+            for (int i = lineStart; i < lineEnd && found < FIELD_COUNT; i++) {
+                if (bytes.get(i) == '|') fieldStarts[found++] = i + 1;
+            }
+            int amountEnd = found < FIELD_COUNT ? lineEnd : fieldStarts[4];
+            while (amountEnd < lineEnd && bytes.get(amountEnd) != '|') amountEnd++;   // extra fields are ignored
+
+            String problem = validate(field, fieldStarts, found, amountEnd);
+            if (problem != null) {
+                String text = ByteField.decode(bytes, lineStart, lineEnd - lineStart, textScratch);
+                out.rejected.add(new RejectedRow(out.lineCount, problem, text));
+                lineStart = nextLine;
+                continue;
+            }
+
+            LocalDate date = decodeDate(field.slice(fieldStarts[0], fieldStarts[1] - 1), pool);
+            LocalTime time = decodeTime(field.slice(fieldStarts[1], fieldStarts[2] - 1), pool);
+            String description = decodeText(bytes, fieldStarts[2], fieldStarts[3] - 1, textScratch, pool);
+            String vendor = decodeText(bytes, fieldStarts[3], fieldStarts[4] - 1, textScratch, pool);
+            long amountCents = FieldDecoder.parseCents(field.slice(fieldStarts[4], amountEnd));
+
+            out.transactions.add(new Transaction(date, time, description, vendor, amountCents));
+            lineStart = nextLine;
+        }
+    }
+
+    /**
+     * Quarantines the marker line at {@code markerStart} (already counted) and every line
+     * of its batch up to {@code batchEnd}: a batch that fails its check is all-or-nothing.
+     */
+    private static void rejectBatch(ByteBuffer bytes, int markerStart, int batchEnd, ParsedChunk out, byte[] scratch) {
+        int lineStart = markerStart;
+        boolean marker = true;
+        while (lineStart < batchEnd) {
+            int lineEnd = lineStart;
+            while (lineEnd < batchEnd && bytes.get(lineEnd) != '\n') lineEnd++;
+            int nextLine = lineEnd + 1;
+            if (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') lineEnd--;
+            if (!marker) out.lineCount++;
+            marker = false;
+            scratch = ByteField.ensureCapacity(scratch, lineEnd - lineStart);
+            out.rejected.add(new RejectedRow(out.lineCount, "damaged batch",
+                    ByteField.decode(bytes, lineStart, lineEnd - lineStart, scratch)));
+            lineStart = nextLine;
+        }
+    }
+
+    /* ---------- field helpers: pooled when a ValuePool is given ---------- */
+
+    private static LocalDate decodeDate(ByteField field, ValuePool pool) {
+        int packed = pool == null ? FieldDecoder.NO_FAST_PATH : FieldDecoder.decodeDate(field);
+        if (packed == FieldDecoder.NO_FAST_PATH) {
+            LocalDate date = FieldDecoder.parseDate(field);
+            return pool == null ? date : pool.date(date);
+        }
+        return pool.date(packed / 10000, packed / 100 % 100, packed % 100);
+    }
+
+    private static LocalTime decodeTime(ByteField field, ValuePool pool) {
+        int secondOfDay = pool == null ? FieldDecoder.NO_FAST_PATH : FieldDecoder.decodeSecondOfDay(field);
+        if (secondOfDay == FieldDecoder.NO_FAST_PATH) {
+            LocalTime time = FieldDecoder.parseTime(field);
+            return pool == null ? time : pool.time(time);
+        }
+        return pool.time(secondOfDay);
+    }
+
+    private static String decodeText(ByteBuffer bytes, int start, int end, byte[] scratch, ValuePool pool) {
+        return pool == null
+                ? ByteField.decode(bytes, start, end - start, scratch)
+                : pool.string(bytes, start, end - start, scratch);
+    }
+
+    /**
+     * Checks that one line will parse. Returns null if the row is good, otherwise a short
+     * reason for the quarantine file. Every row the plain loader used to accept passes;
+     * the canonical shapes written by this program are checked without any exceptions.
+     */
+    private static String validate(ByteField field, int[] fieldStarts, int found, int amountEnd) {
+        if (found < FIELD_COUNT) return "expected " + FIELD_COUNT + " fields, found " + found;
+        if (!FieldDecoder.isDate(field.slice(fieldStarts[0], fieldStarts[1] - 1))) return "bad date";
+        if (!FieldDecoder.isTime(field.slice(fieldStarts[1], fieldStarts[2] - 1))) return "bad time";
+        if (!FieldDecoder.isAmount(field.slice(fieldStarts[4], amountEnd))) return "bad amount";
+        return null;
+    }
+
+    /**
+     * Waits for one chunk and unwraps the exception so callers see the original failure.
+     */
+    static ParsedChunk joinChunk(Future<ParsedChunk> chunkResult) throws IOException {
+        try {
+            return chunkResult.get();
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading data file", interrupted);
+        } catch (ExecutionException failure) {
+            Throwable cause = failure.getCause();
+            if (cause instanceof IOException ioException) throw ioException;
+            if (cause instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IOException(cause);
+        }
+    }
+}
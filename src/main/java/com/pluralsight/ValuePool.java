@@ -0,0 +1,205 @@
+package com.pluralsight;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonical instances for the values that repeat across millions of rows.
+ * <p>
+ * A large ledger has only a few thousand distinct dates, vendors and descriptions, and
+ * at most 86,400 distinct times. The loader passes every decoded value through this pool
+ * so identical values share one object instead of one copy per row. Safe to use from the
+ * parallel loader threads; it also counts how often a value was shared and roughly how
+ * much heap the shared dates and times saved.
+ * <p>
+ * An off-heap ledger keeps every distinct description and vendor once in its own
+ * dictionaries outside the heap, so for it the strings are only decoded, not pooled.
+ */
+final class ValuePool {
+
+    /* ------------------------------------------------------------------
+       Constants
+       ------------------------------------------------------------------ */
+
+    private static final int FIRST_POOLED_YEAR = 1900;
+    private static final int POOLED_YEARS = 300;              // 1900 … 2199
+    private static final int SLOTS_PER_YEAR = 12 * 31;
+
+    /**
+     * Per-thread cache of recently seen strings, looked up by the hash of the raw
+     * bytes – a hit returns the pooled String without decoding anything.
+     */
+    private static final int RECENT_SLOTS = 4096;
+
+    /**
+     * Rough object sizes on a 64-bit JVM with compressed references.
+     */
+    private static final int LOCAL_DATE_BYTES = 24;
+    private static final int LOCAL_TIME_BYTES = 24;
+
+    /* ------------------------------------------------------------------
+       Pools and statistics
+       ------------------------------------------------------------------ */
+
+    private final AtomicReferenceArray<LocalDate> dates = new AtomicReferenceArray<>(POOLED_YEARS * SLOTS_PER_YEAR);
+    private final AtomicReferenceArray<LocalTime> times = new AtomicReferenceArray<>(24 * 60 * 60);
+    private final boolean poolStrings;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ThreadLocal<String[]> recentStrings = ThreadLocal.withInitial(() -> new String[RECENT_SLOTS]);
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * A pool for dates and times, and for descriptions and vendors if {@code poolStrings}.
+     */
+    ValuePool(boolean poolStrings) {
+        this.poolStrings = poolStrings;
+    }
+
+    /* ------------------------------------------------------------------
+       Dates and times
+       ------------------------------------------------------------------ */
+
+    /**
+     * Pooled date for year / month / day (which must form a valid date).
+     */
+    LocalDate date(int year, int month, int day) {
+        lookups.increment();
+        if (year < FIRST_POOLED_YEAR || year >= FIRST_POOLED_YEAR + POOLED_YEARS) {
+            return LocalDate.of(year, month, day);
+        }
+        int slot = (year - FIRST_POOLED_YEAR) * SLOTS_PER_YEAR + (month - 1) * 31 + (day - 1);
+        LocalDate pooled = dates.get(slot);
+        if (pooled != null) {
+            countReuse(LOCAL_DATE_BYTES);
+            return pooled;
+        }
+        LocalDate created = LocalDate.of(year, month, day);
+        return dates.compareAndSet(slot, null, created) ? created : dates.get(slot);
+    }
+
+    /**
+     * Pooled instance equal to {@code date}.
+     */
+    LocalDate date(LocalDate date) {
+        return date(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+    }
+
+    /**
+     * Pooled time for a second of the day (0 … 86,399).
+     */
+    LocalTime time(int secondOfDay) {
+        lookups.increment();
+        LocalTime pooled = times.get(secondOfDay);
+        if (pooled != null) {
+            countReuse(LOCAL_TIME_BYTES);
+            return pooled;
+        }
+        LocalTime created = LocalTime.ofSecondOfDay(secondOfDay);
+        return times.compareAndSet(secondOfDay, null, created) ? created : times.get(secondOfDay);
+    }
+
+    /**
+     * Pooled instance equal to {@code time}; times with fractions of a second are not pooled.
+     */
+    LocalTime time(LocalTime time) {
+        return time.getNano() == 0 ? time(time.toSecondOfDay()) : time;
+    }
+
+    /* ------------------------------------------------------------------
+       Strings
+       ------------------------------------------------------------------ */
+
+    /**
+     * Pooled String for {@code length} UTF-8 bytes at absolute {@code offset}.
+     * {@code scratch} must hold at least {@code length} bytes.
+     */
+    String string(ByteBuffer bytes, int offset, int length, byte[] scratch) {
+        if (!poolStrings) return ByteField.decode(bytes, offset, length, scratch);
+        int hash = 0;
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            byte b = bytes.get(offset + i);
+            hash = 31 * hash + b;
+            if (b < 0) ascii = false;
+        }
+
+        String[] recent = recentStrings.get();
+        int slot = (hash ^ (hash >>> 16)) & (RECENT_SLOTS - 1);
+        String candidate = recent[slot];
+        if (ascii && candidate != null && sameAscii(candidate, bytes, offset, length)) {
+            lookups.increment();
+            reused.increment();
+            return candidate;
+        }
+
+        String pooled = string(ByteField.decode(bytes, offset, length, scratch));
+        recent[slot] = pooled;
+        return pooled;
+    }
+
+    /**
+     * Pooled instance equal to {@code text}.
+     */
+    String string(String text) {
+        if (!poolStrings) return text;
+        lookups.increment();
+        String pooled = strings.putIfAbsent(text, text);
+        if (pooled == null) return text;
+        reused.increment();
+        return pooled;
+    }
+
+    /* ------------------------------------------------------------------
+       Report
+       ------------------------------------------------------------------ */
+
+    /**
+     * One-paragraph summary of what the pools hold, how often they were hit and the heap
+     * they saved.
+     * <p>
+     * Only shared dates and times count towards the saving: the ledger keeps each distinct
+     * string once in its own dictionaries anyway, so pooled strings would be counted twice.
+     */
+    String report() {
+        int pooledDates = 0;
+        for (int i = 0; i < dates.length(); i++) {
+            if (dates.get(i) != null) pooledDates++;
+        }
+        int pooledTimes = 0;
+        for (int i = 0; i < times.length(); i++) {
+            if (times.get(i) != null) pooledTimes++;
+        }
+        String pooledStrings = poolStrings
+                ? "%,d distinct descriptions/vendors".formatted(strings.size())
+                : "descriptions/vendors not pooled (kept off the heap)";
+        return "%s, %,d dates, %,d times pooled%n".formatted(pooledStrings, pooledDates, pooledTimes)
+                + "%,d of %,d decoded values shared an existing instance while loading%n".formatted(
+                reused.sum(), lookups.sum())
+                + "about %,.1f MB of duplicate dates and times avoided".formatted(
+                bytesSaved.sum() / (1024.0 * 1024.0));
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private void countReuse(long bytes) {
+        reused.increment();
+        bytesSaved.add(bytes);
+    }
+
+    private static boolean sameAscii(String candidate, ByteBuffer bytes, int offset, int length) {
+        if (candidate.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (candidate.charAt(i) != bytes.get(offset + i)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,374 @@
+package com.pluralsight;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Optional checksummed format for the data file.
+ * <p>
+ * After an 8-byte file header every record is stored as its payload length, the
+ * CRC-32 of the payload and the payload itself – one pipe-delimited line including
+ * its line break. A crash in the middle of a write leaves a torn last record, which
+ * {@link #recover} finds and cuts off before the file is used. Records whose CRC does
+ * not match anywhere else are silent corruption and go to the quarantine file.
+ * <p>
+ * Loading walks only the record headers on one thread; checking the CRCs and parsing
+ * the lines runs on the common pool, range by range.
+ */
+final class WriteAheadLog {
+
+    /* ------------------------------------------------------------------
+       Constants
+       ------------------------------------------------------------------ */
+
+    private static final int MAGIC = 0x4654574C;                // "FTWL"
+    private static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 8;                          // magic + version
+    static final int RECORD_HEADER_BYTES = 8;                   // length + CRC-32
+
+    /**
+     * Longest payload accepted; a larger length field can only be garbage.
+     */
+    private static final int MAX_RECORD_BYTES = 16 << 20;       // 16 MiB
+
+    /**
+     * Consecutive records are grouped into verify-and-parse tasks of about this many bytes.
+     */
+    private static final long TASK_BYTES = 1L << 20;            // 1 MiB
+
+    /**
+     * Record headers are read through a buffer of this size while walking the file.
+     */
+    private static final int SCAN_BUFFER_BYTES = 1 << 20;       // 1 MiB
+
+    private WriteAheadLog() {
+    }
+
+    /**
+     * True if {@code file} starts with the log header.
+     */
+    static boolean isLog(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException tooShort) {
+            return false;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Writing
+       ------------------------------------------------------------------ */
+
+    /**
+     * Writes the log header into an empty (new) data file.
+     */
+    static void create(Path file) throws IOException {
+        Files.write(file, header());
+    }
+
+    /**
+     * One framed record for {@code recordLine}, ready to be appended.
+     */
+    static byte[] frame(String recordLine) {
+        byte[] payload = (recordLine + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        return frame(payload, 0, payload.length);
+    }
+
+    /**
+     * The header of one record whose payload – {@code payloadBytes} bytes with checksum
+     * {@code crc} – is written right behind it. Used for a whole batch of lines: the CRC
+     * covers all of them, so after a crash the batch is loaded completely or not at all.
+     */
+    static byte[] recordHeader(long payloadBytes, CRC32 crc) {
+        if (payloadBytes > MAX_RECORD_BYTES) throw new IllegalArgumentException("Record longer than " + MAX_RECORD_BYTES + " bytes");
+        return ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                .putInt((int) payloadBytes)
+                .putInt((int) crc.getValue())
+                .array();
+    }
+
+    /**
+     * Completes a record framed in place: {@code out} has {@link #RECORD_HEADER_BYTES}
+     * reserved at {@code recordStart}, followed by the payload up to its position.
+     */
+    static void finishFrame(ByteBuffer out, int recordStart, CRC32 crc) {
+        int payloadStart = recordStart + RECORD_HEADER_BYTES;
+        int length = out.position() - payloadStart;
+        if (length > MAX_RECORD_BYTES) throw new IllegalArgumentException("Record longer than " + MAX_RECORD_BYTES + " bytes");
+        crc.reset();
+        crc.update(out.duplicate().position(payloadStart).limit(out.position()));
+        out.putInt(recordStart, length).putInt(recordStart + 4, (int) crc.getValue());
+    }
+
+    private static byte[] frame(byte[] payload, int offset, int length) {
+        if (length > MAX_RECORD_BYTES) throw new IllegalArgumentException("Record longer than " + MAX_RECORD_BYTES + " bytes");
+        CRC32 crc = new CRC32();
+        crc.update(payload, offset, length);
+        return ByteBuffer.allocate(RECORD_HEADER_BYTES + length)
+                .putInt(length)
+                .putInt((int) crc.getValue())
+                .put(payload, offset, length)
+                .array();
+    }
+
+    /**
+     * Writes a checksummed copy of {@code source} (plain or gzip) to {@code target},
+     * one record per line.
+     */
+    static void convert(Path source, Path target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), 1 << 16)) {
+            out.write(header());
+            CompressedLedger.forEachBlock(source, 1 << 20, block -> {
+                byte[] text = block.array();
+                int lineStart = block.arrayOffset();
+                int end = lineStart + block.remaining();
+                try {
+                    while (lineStart < end) {
+                        int lineEnd = lineStart;
+                        while (lineEnd < end && text[lineEnd] != '\n') lineEnd++;
+                        if (lineEnd < end) {
+                            out.write(frame(text, lineStart, lineEnd + 1 - lineStart));
+                        } else {                                // last line without a line break
+                            byte[] terminated = new byte[lineEnd - lineStart + 1];
+                            System.arraycopy(text, lineStart, terminated, 0, lineEnd - lineStart);
+                            terminated[terminated.length - 1] = '\n';
+                            out.write(frame(terminated, 0, terminated.length));
+                        }
+                        lineStart = lineEnd + 1;
+                    }
+                } catch (IOException ioException) {
+                    throw new UncheckedIOException(ioException);
+                }
+            });
+        } catch (UncheckedIOException writeFailed) {
+            throw writeFailed.getCause();
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Crash recovery
+       ------------------------------------------------------------------ */
+
+    /**
+     * Cuts off a torn last record – one that runs past the end of the file or whose
+     * CRC does not match – and returns the number of bytes removed. Must run before
+     * anything appends to the file. Damage too large to be one torn write is reported
+     * and left in place; loading then stops in front of it.
+     */
+    static long recover(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            long[] lastRecord = {-1};
+            long end = walkRecords(channel, HEADER_BYTES, fileSize, start -> lastRecord[0] = start);
+
+            if (end == fileSize && lastRecord[0] >= 0 && !checksumMatches(channel, lastRecord[0], end)) {
+                end = lastRecord[0];
+            }
+            long tornBytes = fileSize - end;
+            if (tornBytes == 0) return 0;
+            if (tornBytes > RECORD_HEADER_BYTES + MAX_RECORD_BYTES) {
+                System.out.println("Damaged record at offset " + end + " in " + file + " – the "
+                        + tornBytes + " bytes after it are not loaded.");
+                return 0;
+            }
+            channel.truncate(end);
+            channel.force(true);
+            return tornBytes;
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Loading
+       ------------------------------------------------------------------ */
+
+    /**
+     * Checksummed counterpart of {@link TransactionLoader#load}. Offsets are positions in
+     * the log and {@code fromOffset} must be a record boundary (or 0). A record that is
+     * still being written is left out; {@code endOffset} then points at its start.
+     * Records with a wrong CRC are rejected as "bad checksum".
+     */
+    static TransactionLoader.LoadedRange load(Path file, long fromOffset, long toOffset, long firstLine,
+                                              ValuePool pool, AtomicLong progress,
+                                              Consumer<List<Transaction>> rowSink) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = Math.max(fromOffset, HEADER_BYTES);
+            long endOffset = Math.min(toOffset, channel.size());
+
+            // Walk the record headers and cut the records into task ranges.
+            ArrayList<Long> boundaries = new ArrayList<>();
+            boundaries.add(start);
+            long end = walkRecords(channel, start, endOffset, recordStart -> {
+                if (recordStart - boundaries.get(boundaries.size() - 1) >= TASK_BYTES) boundaries.add(recordStart);
+            });
+            if (end > boundaries.get(boundaries.size() - 1)) boundaries.add(end);
+
+            List<Callable<TransactionLoader.ParsedChunk>> chunkTasks = new ArrayList<>();
+            for (int i = 0; i < boundaries.size() - 1; i++) {
+                long rangeStart = boundaries.get(i);
+                long rangeEnd = boundaries.get(i + 1);
+                chunkTasks.add(() -> verifyAndParse(channel, rangeStart, rangeEnd, pool, progress));
+            }
+            if (chunkTasks.isEmpty()) {
+                return new TransactionLoader.LoadedRange(new ArrayList<>(), new ArrayList<>(), end, firstLine);
+            }
+            return TransactionLoader.runChunks(chunkTasks, firstLine, end, rowSink);
+        }
+    }
+
+    /**
+     * Task body: checks the CRC of every record in {@code [start, end)} and parses the good ones.
+     */
+    private static TransactionLoader.ParsedChunk verifyAndParse(FileChannel channel, long start, long end,
+                                                                ValuePool pool, AtomicLong progress)
+            throws IOException {
+        MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        TransactionLoader.ParsedChunk chunk = new TransactionLoader.ParsedChunk();
+        ByteArrayOutputStream goodLines = new ByteArrayOutputStream((int) (end - start));
+        CRC32 crc = new CRC32();
+
+        int position = 0;
+        while (position < records.limit()) {
+            int length = records.getInt(position);
+            int expectedCrc = records.getInt(position + 4);
+            int payloadStart = position + RECORD_HEADER_BYTES;
+
+            crc.reset();
+            crc.update(records.duplicate().position(payloadStart).limit(payloadStart + length));
+            if ((int) crc.getValue() == expectedCrc) {
+                byte[] payload = new byte[length];
+                records.get(payloadStart, payload);
+                goodLines.writeBytes(payload);
+            } else {
+                // Parse what came before so line numbers stay in file order.
+                TransactionLoader.parseLines(ByteBuffer.wrap(goodLines.toByteArray()), chunk, pool);
+                goodLines.reset();
+                // A batch record holds several lines: quarantine each one under its own
+                // line number so the numbers after it stay right.
+                byte[] damaged = new byte[length];
+                records.get(payloadStart, damaged);
+                String[] lines = new String(damaged, StandardCharsets.UTF_8).split("\n", -1);
+                int lineCount = lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+                for (int i = 0; i < lineCount; i++) {
+                    chunk.lineCount++;
+                    chunk.rejected.add(new TransactionLoader.RejectedRow(chunk.lineCount, "bad checksum", lines[i].strip()));
+                }
+            }
+            position = payloadStart + length;
+        }
+        TransactionLoader.parseLines(ByteBuffer.wrap(goodLines.toByteArray()), chunk, pool);
+        progress.addAndGet(end - start);
+        return chunk;
+    }
+
+    /* ------------------------------------------------------------------
+       Sequential reading (streaming queries, compress)
+       ------------------------------------------------------------------ */
+
+    /**
+     * Reads the log front to back and hands over blocks of the verified lines, each in
+     * its own array. Records with a wrong CRC are skipped; reading stops at a torn record.
+     */
+    static void forEachBlock(Path file, int blockBytes, Consumer<ByteBuffer> action) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16))) {
+            in.skipNBytes(HEADER_BYTES);
+            ByteArrayOutputStream block = new ByteArrayOutputStream(blockBytes);
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[256];
+            while (true) {
+                int length;
+                int expectedCrc;
+                try {
+                    length = in.readInt();
+                    expectedCrc = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) break;
+                    payload = ByteField.ensureCapacity(payload, length);
+                    in.readFully(payload, 0, length);
+                } catch (EOFException endOfLog) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != expectedCrc) continue;
+
+                block.write(payload, 0, length);
+                if (block.size() >= blockBytes) {
+                    action.accept(ByteBuffer.wrap(block.toByteArray()));
+                    block.reset();
+                }
+            }
+            if (block.size() > 0) action.accept(ByteBuffer.wrap(block.toByteArray()));
+        }
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    /**
+     * Hops from record header to record header between {@code from} and {@code to},
+     * calling {@code recordStart} with the offset of every complete record. Returns the
+     * offset just after the last complete record. Stops early at a length that cannot
+     * be right, since nothing after it can be trusted to be a record boundary.
+     */
+    private static long walkRecords(FileChannel channel, long from, long to, LongConsumer recordStart)
+            throws IOException {
+        ByteBuffer headers = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long bufferStart = from;
+        headers.limit(0);
+
+        long position = from;
+        while (position + RECORD_HEADER_BYTES <= to) {
+            if (position + RECORD_HEADER_BYTES > bufferStart + headers.limit()) {
+                bufferStart = position;
+                headers.clear().limit((int) Math.min(headers.capacity(), to - position));
+                while (headers.hasRemaining()) {
+                    if (channel.read(headers, bufferStart + headers.position()) < 0) break;
+                }
+                headers.limit(headers.position());
+            }
+            int length = headers.getInt((int) (position - bufferStart));
+            long next = position + RECORD_HEADER_BYTES + length;
+            if (length <= 0 || length > MAX_RECORD_BYTES || next > to) break;
+            recordStart.accept(position);
+            position = next;
+        }
+        return position;
+    }
+
+    private static boolean checksumMatches(FileChannel channel, long recordStart, long recordEnd) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate((int) (recordEnd - recordStart));
+        while (record.hasRemaining()) {
+            if (channel.read(record, recordStart + record.position()) < 0) return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_BYTES, record.capacity() - RECORD_HEADER_BYTES);
+        return (int) crc.getValue() == record.getInt(4);
+    }
+}
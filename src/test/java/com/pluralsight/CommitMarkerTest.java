@@ -0,0 +1,94 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Torn-tail recovery of batches in plain data files.
+ */
+class CommitMarkerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverCutsOffABatchCutShort() throws IOException {
+        Path file = Files.writeString(directory.resolve("ledger.csv"), lines(0, 3));
+        long committedSize = Files.size(file);
+        byte[] batch = batch(lines(3, 6));
+        append(file, batch, batch.length - 10);
+
+        assertEquals(batch.length - 10, CommitMarker.recover(file));
+        assertEquals(committedSize, Files.size(file));
+        assertEquals(3, load(file).transactions().size());
+    }
+
+    @Test
+    void recoverKeepsACompleteBatch() throws IOException {
+        Path file = Files.writeString(directory.resolve("ledger.csv"), lines(0, 3));
+        byte[] batch = batch(lines(3, 6));
+        append(file, batch, batch.length);
+        long size = Files.size(file);
+
+        assertEquals(0, CommitMarker.recover(file));
+        assertEquals(size, Files.size(file));
+        assertEquals(6, load(file).transactions().size());
+    }
+
+    @Test
+    void committedEndStopsInFrontOfABatchCutShort() throws IOException {
+        Path file = Files.writeString(directory.resolve("ledger.csv"), lines(0, 3));
+        long committedSize = Files.size(file);
+        byte[] batch = batch(lines(3, 6));
+        append(file, batch, batch.length - 10);
+
+        assertEquals(committedSize, CommitMarker.committedEnd(file, 0, Files.size(file)));
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private static String lines(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            text.append("2024-01-02|10:00:").append(String.format("%02d", i))
+                    .append("|row ").append(i).append("|Vendor|").append(i).append(".25\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Marker line and rows, as one write of the appender puts them.
+     */
+    private static byte[] batch(String rows) {
+        byte[] rowBytes = rows.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(rowBytes);
+        byte[] marker = CommitMarker.marker((int) rows.lines().count(), rowBytes.length, crc);
+        byte[] batch = new byte[marker.length + rowBytes.length];
+        System.arraycopy(marker, 0, batch, 0, marker.length);
+        System.arraycopy(rowBytes, 0, batch, marker.length, rowBytes.length);
+        return batch;
+    }
+
+    private static void append(Path file, byte[] bytes, int length) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write(bytes, 0, length);
+        }
+    }
+
+    private static TransactionLoader.LoadedRange load(Path file) throws IOException {
+        return TransactionLoader.load(file, 0, Long.MAX_VALUE, 0, null, new AtomicLong());
+    }
+}
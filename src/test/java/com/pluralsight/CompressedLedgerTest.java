@@ -0,0 +1,153 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Member framing of compressed data files.
+ */
+class CompressedLedgerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compressedFileIsAChainOfSizedGzipMembers() throws IOException {
+        String text = rows(0, 40_000);                          // more than one 1 MiB member
+        Path compressed = compress(text);
+
+        byte[] bytes = Files.readAllBytes(compressed);
+        ByteBuffer file = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int members = 0;
+        for (int offset = 0; offset < bytes.length; offset += file.getInt(offset + 16)) {
+            assertEquals(0x1f, bytes[offset] & 0xFF);
+            assertEquals(0x8b, bytes[offset + 1] & 0xFF);
+            assertEquals('F', bytes[offset + 12]);
+            assertEquals('T', bytes[offset + 13]);
+            members++;
+        }
+        assertTrue(members > 1, "members: " + members);
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertEquals(text, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void loadReadsEveryMemberInFileOrder() throws IOException {
+        Path compressed = compress(rows(0, 40_000));
+
+        TransactionLoader.LoadedRange loaded = load(compressed);
+        assertEquals(40_000, loaded.transactions().size());
+        assertEquals(Files.size(compressed), loaded.endOffset());
+        for (int i = 0; i < 40_000; i++) {
+            assertEquals("row " + i, loaded.transactions().get(i).getDescription());
+        }
+    }
+
+    @Test
+    void loadStopsInFrontOfATornMember() throws IOException {
+        Path compressed = compress(rows(0, 10));
+        long completeSize = Files.size(compressed);
+        byte[] member = member(rows(10, 20));
+        for (int cut : new int[]{5, 25, member.length - 1}) {
+            appendPart(compressed, member, cut);
+
+            TransactionLoader.LoadedRange loaded = load(compressed);
+            assertEquals(10, loaded.transactions().size(), "cut at " + cut);
+            assertEquals(completeSize, loaded.endOffset(), "cut at " + cut);
+            assertTrue(loaded.rejected().isEmpty());
+
+            truncate(compressed, completeSize);
+        }
+    }
+
+    @Test
+    void recoverCutsTheFileBackToTheLastCompleteMember() throws IOException {
+        Path compressed = compress(rows(0, 10));
+        long completeSize = Files.size(compressed);
+        byte[] member = member(rows(10, 20));
+        for (int cut : new int[]{5, 25, member.length - 1}) {
+            appendPart(compressed, member, cut);
+
+            assertEquals(cut, CompressedLedger.recover(compressed), "cut at " + cut);
+            assertEquals(completeSize, Files.size(compressed));
+        }
+
+        // Appending after the recovery gives a file every reader gets through.
+        appendPart(compressed, member, member.length);
+        assertEquals(0, CompressedLedger.recover(compressed));
+        assertEquals(20, load(compressed).transactions().size());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+            assertEquals(rows(0, 20), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void recoverDropsAMemberWithAWrongChecksum() throws IOException {
+        Path compressed = compress(rows(0, 10));
+        long completeSize = Files.size(compressed);
+        byte[] member = member(rows(10, 20));
+        member[member.length - 8] ^= 1;                         // CRC-32 in the trailer
+        appendPart(compressed, member, member.length);
+
+        assertEquals(member.length, CompressedLedger.recover(compressed));
+        assertEquals(completeSize, Files.size(compressed));
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    static String rows(int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            text.append("2024-01-02|10:").append(String.format("%02d:%02d", i / 60 % 60, i % 60))
+                    .append("|row ").append(i).append("|Vendor|").append(i).append(".25\n");
+        }
+        return text.toString();
+    }
+
+    Path compress(String text) throws IOException {
+        Path plain = Files.writeString(directory.resolve("plain.csv"), text);
+        Path compressed = directory.resolve("ledger.csv.gz");
+        CompressedLedger.compress(plain, compressed);
+        return compressed;
+    }
+
+    static byte[] member(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return CompressedLedger.compressBlock(bytes, 0, bytes.length);
+    }
+
+    static void appendPart(Path file, byte[] bytes, int length) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write(bytes, 0, length);
+        }
+    }
+
+    static void truncate(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size);
+        }
+    }
+
+    static TransactionLoader.LoadedRange load(Path file) throws IOException {
+        return TransactionLoader.load(file, 0, Long.MAX_VALUE, 0, null, new AtomicLong());
+    }
+}
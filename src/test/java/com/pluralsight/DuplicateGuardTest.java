@@ -0,0 +1,85 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Duplicate detection: filter misses, filter false positives and the exact index.
+ */
+class DuplicateGuardTest {
+
+    private static final int STORED_ROWS = 100_000;
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void newRowsPassEvenWhenTheFilterSaysMaybe(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        DuplicateGuard guard = new DuplicateGuard(offHeap);
+        store(ledger, guard, rows(0, STORED_ROWS));
+
+        // Enough new rows that some of them are false "maybe"s of the filter; the exact
+        // index must let every one of them through.
+        List<Transaction> fresh = rows(STORED_ROWS, 2 * STORED_ROWS);
+        assertEquals(fresh, guard.withoutDuplicates(fresh, ledger));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void storedRowsAndRepeatsWithinABatchAreRefused(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        DuplicateGuard guard = new DuplicateGuard(offHeap);
+        store(ledger, guard, rows(0, 1_000));
+
+        List<Transaction> batch = new ArrayList<>(rows(500, 1_500));   // half of them stored
+        batch.addAll(rows(1_000, 1_010));                               // repeats within the batch
+        List<Transaction> accepted = guard.withoutDuplicates(batch, ledger);
+        assertEquals(lines(rows(1_000, 1_500)), lines(accepted));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void followsRowsThatAreRemovedAndMoved(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        DuplicateGuard guard = new DuplicateGuard(offHeap);
+        List<Transaction> stored = rows(0, 100);
+        store(ledger, guard, stored);
+
+        // Take row 10 out: the rows behind it move up, and it may be saved again.
+        Transaction removed = stored.get(10);
+        int row = ledger.removeLast(removed);
+        guard.removed(ledger, removed, row);
+        assertEquals(List.of(removed), guard.withoutDuplicates(List.of(removed), ledger));
+
+        // The moved rows are still recognised at their new row numbers.
+        assertTrue(guard.withoutDuplicates(stored.subList(11, 100), ledger).isEmpty());
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private static void store(LedgerColumns ledger, DuplicateGuard guard, List<Transaction> rows) {
+        guard.addAll(rows, ledger.size());
+        ledger.addAll(rows);
+    }
+
+    private static List<String> lines(List<Transaction> rows) {
+        return rows.stream().map(RecordEncoder::line).toList();
+    }
+
+    private static List<Transaction> rows(int from, int to) {
+        List<Transaction> rows = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            rows.add(new Transaction(LocalDate.of(2024, 1, 1).plusDays(i % 365), LocalTime.ofSecondOfDay(i % 86_400),
+                    "row " + i, "Vendor " + i % 17, i * 25L));
+        }
+        return rows;
+    }
+}
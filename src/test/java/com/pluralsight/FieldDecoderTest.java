@@ -0,0 +1,45 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Amount parsing into whole cents.
+ */
+class FieldDecoderTest {
+
+    @Test
+    void plainDecimalsRoundHalfUp() {
+        assertEquals(-123456, FieldDecoder.parseCents("-1234.56"));
+        assertEquals(101, FieldDecoder.parseCents("1.005"));
+        assertEquals(-101, FieldDecoder.parseCents("-1.005"));
+        assertEquals(50, FieldDecoder.parseCents(".5"));
+        assertEquals(1200, FieldDecoder.parseCents("12"));
+    }
+
+    @Test
+    void otherNumberShapesAreStillAccepted() {
+        assertEquals(100_000, FieldDecoder.parseCents("1e3"));
+        assertEquals(1600, FieldDecoder.parseCents("0x1p4"));
+        assertEquals(250, FieldDecoder.parseCents(" 2.5d "));
+    }
+
+    @Test
+    void amountsTooLargeForCentsAreNotNumbers() {
+        for (String text : new String[]{"1e30", "99999999999999999999.99", "0x1p80", "1e30d"}) {
+            assertThrows(NumberFormatException.class, () -> FieldDecoder.parseCents(text), text);
+            assertFalse(FieldDecoder.isAmount(text), text);
+            assertEquals(FieldDecoder.NOT_AN_AMOUNT, FieldDecoder.tryParseCents(text), text);
+        }
+    }
+
+    @Test
+    void nanAndInfinityAreRejected() {
+        assertThrows(NumberFormatException.class, () -> FieldDecoder.parseCents("NaN"));
+        assertThrows(NumberFormatException.class, () -> FieldDecoder.parseCents("Infinity"));
+        assertFalse(FieldDecoder.isAmount("-Infinity"));
+    }
+}
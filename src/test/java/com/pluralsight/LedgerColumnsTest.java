@@ -0,0 +1,86 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Newest-first order and selections of the column store, on and off the heap.
+ */
+class LedgerColumnsTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 9, 0);
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void newestFirstKeepsStoredOrderWithinATimestamp(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        ledger.addAll(List.of(row(0, "a"), row(5, "b"), row(0, "c"), row(5, "d"), row(3, "e")));
+
+        assertEquals(List.of("b", "d", "e", "a", "c"), descriptionsNewestFirst(ledger));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sortedRowsAreMergedWithTheRest(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        ledger.addAll(List.of(row(4, "entered while loading"), row(1, "entered too")));
+        ledger.insert(0, List.of(row(0, "s0"), row(2, "s2"), row(2, "s2 again"), row(6, "s6")), 4);
+
+        assertEquals(List.of("s6", "entered while loading", "s2", "s2 again", "entered too", "s0"),
+                descriptionsNewestFirst(ledger));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void newestFirstMatchesAStableSort(boolean offHeap) {
+        Random random = new Random(42);
+        List<Transaction> sorted = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) sorted.add(row(random.nextInt(500), "sorted " + i));
+        sorted.sort(Comparator.comparingLong(Transaction::getSortKey));
+        List<Transaction> unsorted = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) unsorted.add(row(random.nextInt(500), "unsorted " + i));
+
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        ledger.insert(0, sorted, sorted.size());
+        ledger.addAll(unsorted);
+
+        List<Transaction> expected = new ArrayList<>(sorted);
+        expected.addAll(unsorted);
+        expected.sort(Transaction.NEWEST_FIRST);                 // List.sort is stable
+        assertEquals(expected.stream().map(Transaction::getDescription).toList(), descriptionsNewestFirst(ledger));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void selectMatchesIgnoringCaseAndKeepsTheOrder(boolean offHeap) {
+        LedgerColumns ledger = new LedgerColumns(offHeap);
+        ledger.addAll(List.of(row(1, "Coffee"), row(2, "Rent"), row(3, "COFFEE"), row(0, "coffee")));
+
+        LedgerColumns coffee = ledger.select(LedgerQuery.ALL.withDescription("cOfFeE"));
+        assertEquals(3, coffee.size());
+        assertEquals(List.of("COFFEE", "Coffee", "coffee"), descriptionsNewestFirst(coffee));
+        assertEquals(0, ledger.select(LedgerQuery.ALL.withDescription("tea")).size());
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private static Transaction row(int minutes, String description) {
+        LocalDateTime at = START.plusMinutes(minutes);
+        return new Transaction(at.toLocalDate(), at.toLocalTime(), description, "Vendor", 100);
+    }
+
+    private static List<String> descriptionsNewestFirst(LedgerColumns ledger) {
+        List<String> descriptions = new ArrayList<>();
+        ledger.forEachNewestFirst(row -> descriptions.add(ledger.description(row)));
+        return descriptions;
+    }
+}
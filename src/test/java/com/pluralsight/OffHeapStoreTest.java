@@ -0,0 +1,85 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Off-heap dictionaries and longs.
+ */
+class OffHeapStoreTest {
+
+    @Test
+    void dictionaryNumbersDistinctStringsInOrder() {
+        OffHeapStore.Dictionary dictionary = new OffHeapStore.Dictionary();
+        String longText = "x".repeat(OffHeapStore.CHUNK_BYTES + 10);   // gets a chunk of its own
+
+        assertEquals(0, dictionary.idOf("Rent"));
+        assertEquals(1, dictionary.idOf("Café ☕"));
+        assertEquals(2, dictionary.idOf(longText));
+        assertEquals(0, dictionary.idOf("Rent"));
+        assertEquals(1, dictionary.idOf("Café ☕"));
+
+        assertEquals("Rent", dictionary.value(0));
+        assertEquals("Café ☕", dictionary.value(1));
+        assertEquals(longText, dictionary.value(2));
+    }
+
+    @Test
+    void dictionaryFindsEveryEntryAfterGrowing() {
+        OffHeapStore.Dictionary dictionary = new OffHeapStore.Dictionary();
+        for (int i = 0; i < 20_000; i++) assertEquals(i, dictionary.idOf("vendor " + i));
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals(i, dictionary.idOf("vendor " + i));
+            assertEquals("vendor " + i, dictionary.value(i));
+        }
+    }
+
+    @Test
+    void foldedIdsAreSharedByEntriesEqualIgnoringCase() {
+        OffHeapStore.Dictionary dictionary = new OffHeapStore.Dictionary();
+        int amazon = dictionary.idOf("Amazon");
+        int shouting = dictionary.idOf("AMAZON");
+        int prime = dictionary.idOf("Amazon Prime");
+        int apples = dictionary.idOf("ÄPFEL");
+        int lowerApples = dictionary.idOf("äpfel");
+
+        assertNotEquals(amazon, shouting);
+        assertEquals(dictionary.foldedId(amazon), dictionary.foldedId(shouting));
+        assertNotEquals(dictionary.foldedId(amazon), dictionary.foldedId(prime));
+        assertEquals(dictionary.foldedId(apples), dictionary.foldedId(lowerApples));
+
+        assertEquals(dictionary.foldedId(amazon), dictionary.foldedIdOf("aMaZoN"));
+        assertEquals(dictionary.foldedId(apples), dictionary.foldedIdOf("Äpfel"));
+        assertEquals(-1, dictionary.foldedIdOf("Amazo"));
+    }
+
+    @Test
+    void readOnlyCopySharesTheEntries() {
+        OffHeapStore.Dictionary dictionary = new OffHeapStore.Dictionary();
+        int rent = dictionary.idOf("Rent");
+        dictionary.idOf("RENT");
+        LedgerColumns.Dictionary copy = dictionary.readOnlyCopy();
+        dictionary.idOf("Groceries");                           // added after the copy was taken
+
+        assertEquals("Rent", copy.value(rent));
+        assertEquals(dictionary.foldedId(rent), copy.foldedId(rent));
+        assertEquals(dictionary.foldedId(1), copy.foldedId(1));
+    }
+
+    @Test
+    void longsStartAtZeroAndKeepValuesWhileGrowing() {
+        OffHeapStore.Longs longs = new OffHeapStore.Longs();
+        longs.ensureCapacity(10);
+        assertEquals(0, longs.get(9));
+        longs.set(9, -5);
+
+        int pastOneChunk = OffHeapStore.CHUNK_BYTES / Long.BYTES + 1;
+        longs.ensureCapacity(pastOneChunk);
+        longs.set(pastOneChunk - 1, Long.MAX_VALUE);
+        assertEquals(-5, longs.get(9));
+        assertEquals(Long.MAX_VALUE, longs.get(pastOneChunk - 1));
+        assertEquals(0, longs.get(pastOneChunk - 2));
+    }
+}
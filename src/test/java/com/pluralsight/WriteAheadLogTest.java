@@ -0,0 +1,83 @@
+package com.pluralsight;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Torn-tail recovery of checksummed logs.
+ */
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoverCutsOffARecordThatRunsPastTheEnd() throws IOException {
+        Path log = logWithRecords(5);
+        long completeSize = Files.size(log);
+        byte[] record = WriteAheadLog.frame(line(5));
+        append(log, record, record.length - 3);
+
+        assertEquals(record.length - 3, WriteAheadLog.recover(log));
+        assertEquals(completeSize, Files.size(log));
+        assertEquals(5, load(log).transactions().size());
+    }
+
+    @Test
+    void recoverCutsOffALastRecordWithAWrongChecksum() throws IOException {
+        Path log = logWithRecords(5);
+        long completeSize = Files.size(log);
+        byte[] record = WriteAheadLog.frame(line(5));
+        record[record.length - 2] ^= 1;                         // flip a bit in the payload
+        append(log, record, record.length);
+
+        assertEquals(record.length, WriteAheadLog.recover(log));
+        assertEquals(completeSize, Files.size(log));
+    }
+
+    @Test
+    void recoverLeavesACompleteLogAlone() throws IOException {
+        Path log = logWithRecords(5);
+        long size = Files.size(log);
+
+        assertEquals(0, WriteAheadLog.recover(log));
+        assertEquals(size, Files.size(log));
+        assertEquals(5, load(log).transactions().size());
+    }
+
+    /* ------------------------------------------------------------------
+       Helpers
+       ------------------------------------------------------------------ */
+
+    private Path logWithRecords(int count) throws IOException {
+        Path log = directory.resolve("ledger.wal");
+        WriteAheadLog.create(log);
+        for (int i = 0; i < count; i++) {
+            byte[] record = WriteAheadLog.frame(line(i));
+            append(log, record, record.length);
+        }
+        return log;
+    }
+
+    private static String line(int i) {
+        return "2024-01-02|10:00:" + String.format("%02d", i) + "|row " + i + "|Vendor|" + i + ".25";
+    }
+
+    private static void append(Path file, byte[] bytes, int length) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+            out.write(bytes, 0, length);
+        }
+    }
+
+    private static TransactionLoader.LoadedRange load(Path file) throws IOException {
+        return TransactionLoader.load(file, 0, Long.MAX_VALUE, 0, null, new AtomicLong());
+    }
+}